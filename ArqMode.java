@@ -0,0 +1,38 @@
+/** ArqMode Enum
+ * Retransmission schemes the sliding window transfer can run with.
+ * Go-Back-N resends everything after a lost segment, Selective Repeat resends only what is missing.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+enum ArqMode {
+    GO_BACK_N("gbn"),
+    SELECTIVE_REPEAT("sr");
+
+    private final String headerName;
+
+    ArqMode(String headerName) {
+        this.headerName = headerName;
+    }
+
+    /** getHeaderName
+     * @return name used on the command line and in the ARQ request header
+     */
+    String getHeaderName() {
+        return headerName;
+    }
+
+    /** parse
+     * Looks up a mode by its command line / header name
+     *
+     * @param name: "gbn" or "sr", case insensitive
+     * @return the matching mode
+     */
+    static ArqMode parse(String name) {
+        for (ArqMode mode : values()) {
+            if (mode.headerName.equalsIgnoreCase(name.trim()))
+                return mode;
+        }
+        throw new IllegalArgumentException("Unknown ARQ mode: " + name + " (expected gbn or sr)");
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** ArqRecoveryCheck Class
+ * Automated check of Go-Back-N and Selective Repeat recovery. Runs an embedded UDPServer on
+ * loopback and, for each ARQ mode and impairment profile, downloads random files through an
+ * embedded NetworkEmulator that loses, reorders, duplicates or corrupts datagrams in both
+ * directions, so data segments and ACKs are both hit. Every download, single and pipelined, must
+ * come back byte for byte equal to the file on disk. Prints one line per case and exits with 1 if
+ * any download failed or came back different.
+ * Run using java ArqRecoveryCheck [downloadsPerCase] [fileSizeKB] [seed] [blocking|nio]
+ * e.g. java ArqRecoveryCheck 3 256 4320 nio
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public class ArqRecoveryCheck {
+
+    private static final int WINDOW_SIZE = 32;
+    private static final long LINGER_MS = 20;
+
+    //impairment applied in both directions by each profile
+    private static final Map<String, NetworkEmulator.Impairment> PROFILES = new LinkedHashMap<>();
+    static {
+        PROFILES.put("lossy", new NetworkEmulator.Impairment(0.05, 1, 0, 200_000, 1024, 0.0, 0.0, 0.0));
+        PROFILES.put("reordered", new NetworkEmulator.Impairment(0.0, 1, 0, 200_000, 1024, 0.10, 0.0, 0.0));
+        PROFILES.put("duplicated", new NetworkEmulator.Impairment(0.0, 1, 0, 200_000, 1024, 0.0, 0.10, 0.0));
+        PROFILES.put("corrupted", new NetworkEmulator.Impairment(0.0, 1, 0, 200_000, 1024, 0.0, 0.0, 0.05));
+        PROFILES.put("everything", new NetworkEmulator.Impairment(0.03, 1, 1, 200_000, 1024, 0.05, 0.03, 0.03));
+    }
+
+    public static void main(String args[]) throws Exception {
+        int downloadsPerCase = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int fileSizeKB = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 4320;
+        String engine = args.length > 3 ? args[3] : "blocking";
+
+        //random content so a segment written to the wrong place always shows; the second file is odd
+        //sized so the last segment is a short one
+        Random random = new Random(seed);
+        byte[][] contents = {new byte[fileSizeKB << 10], new byte[(fileSizeKB << 9) + 123]};
+        File[] files = new File[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            random.nextBytes(contents[i]);
+            files[i] = File.createTempFile("arq" + i, ".bin");
+            files[i].deleteOnExit();
+            Files.write(files[i].toPath(), contents[i]);
+        }
+
+        //the server and client print a few lines per transfer, which would hide the results
+        PrintStream console = System.out;
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int failures = 0;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try (UDPServer server = new UDPServer(loopback, new int[]{0}, ArqMode.SELECTIVE_REPEAT, WINDOW_SIZE,
+                UDPServer.DEFAULT_MAX_SESSIONS, engine, CongestionControl.DEFAULT_NAME, 0)) {
+            server.start();
+            InetSocketAddress requests = new InetSocketAddress(loopback, server.getPorts()[0]);
+            for (ArqMode mode : ArqMode.values()) {
+                for (Map.Entry<String, NetworkEmulator.Impairment> profile : PROFILES.entrySet()) {
+                    try (NetworkEmulator emulator = new NetworkEmulator(0, requests, profile.getValue(),
+                            profile.getValue(), seed)) {
+                        emulator.start();
+                        UDPClient client = new UDPClient(loopback, new int[]{emulator.getPort()}, mode, WINDOW_SIZE,
+                                Packet.ETHERNET_PACKET_SIZE, FecEncoder.OFF, ReceiveEngine.DEFAULT_RECEIVE_BUFFER_BYTES);
+                        client.setLinger(LINGER_MS);
+                        int caseFailures = 0;
+                        for (int i = 0; i < downloadsPerCase; i++) {
+                            if (!download(client, files, contents, i % contents.length))
+                                caseFailures++;
+                            if (!download(client, files, contents, -1))    //both files pipelined
+                                caseFailures++;
+                        }
+                        failures += caseFailures;
+                        console.printf("%-8s %-4s %-11s %d of %d downloads intact%n", engine, mode.getHeaderName(),
+                                profile.getKey(), 2 * downloadsPerCase - caseFailures, 2 * downloadsPerCase);
+                    }
+                }
+            }
+        } finally {
+            System.setOut(console);
+            for (File file : files) file.delete();
+        }
+
+        if (failures > 0) {
+            console.println(failures + " downloads failed or came back different");
+            System.exit(1);
+        }
+        console.println("Every download came back intact");
+    }
+
+    /** download
+     * Fetches one file, or every file pipelined, and checks each against what the server holds
+     *
+     * @param client: client to download with
+     * @param files: files the server reads
+     * @param contents: each file's content
+     * @param which: index of the file to fetch, or -1 for all of them in one transfer
+     * @return true if every file came back intact
+     */
+    private static boolean download(UDPClient client, File[] files, byte[][] contents, int which)
+            throws InterruptedException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            if (which < 0 || which == i)
+                names.add(files[i].getAbsolutePath());
+        }
+        List<UDPClient.FileRequest> received;
+        try {
+            received = client.download(names);
+        } catch (IOException e) {
+            return false;
+        }
+        boolean intact = true;
+        for (int i = 0; i < received.size(); i++) {
+            UDPClient.FileRequest file = received.get(i);
+            if (!file.isFound()) {
+                intact = false;
+                continue;
+            }
+            try {
+                intact &= Arrays.equals(Files.readAllBytes(file.getFile().toPath()), contents[which < 0 ? i : which]);
+            } catch (IOException e) {
+                intact = false;
+            } finally {
+                file.getFile().delete();
+            }
+        }
+        return intact;
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+/** ChecksumBenchmark Class
+ * Checks that InternetChecksum matches the original Packet.CheckSum on random input, then times
+ * the original loop, InternetChecksum and java.util.zip.CRC32C for payloads from 1 byte to 64 KB.
+ * Each case is warmed up before it is measured and a result is kept live so the JIT cannot drop it.
+ * Run using java ChecksumBenchmark [millisPerCase]
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public class ChecksumBenchmark {
+
+    private static final int[] PAYLOAD_SIZES = {1, 16, 64, 250, 1472, 4096, 16384, 65536};
+    private static long blackhole;
+
+    public static void main(String args[]) {
+        long millisPerCase = args.length > 0 ? Long.parseLong(args[0]) : 500;
+        Random random = new Random(4320);
+
+        //identical results for every length and alignment, including odd ones
+        for (int i = 0; i < 100_000; i++) {
+            byte[] data = new byte[random.nextInt(600) + 1];
+            random.nextBytes(data);
+            if (random.nextInt(10) == 0) Arrays.fill(data, (byte) (random.nextBoolean() ? 0 : 0xFF));
+            int offset = random.nextInt(data.length);
+            int length = random.nextInt(data.length - offset + 1);
+            if (legacyCheckSum(data, offset, length) != InternetChecksum.checkSum(data, offset, length))
+                throw new AssertionError("Checksum mismatch for length " + length + " at offset " + offset);
+        }
+        System.out.println("InternetChecksum matches the original CheckSum on 100000 random inputs");
+
+        System.out.printf("%8s %16s %16s %16s%n", "bytes", "original MB/s", "word MB/s", "CRC32C MB/s");
+        for (int size : PAYLOAD_SIZES) {
+            byte[] payload = new byte[size];
+            random.nextBytes(payload);
+            double original = measure(millisPerCase, payload, () -> legacyCheckSum(payload, 0, payload.length));
+            double word = measure(millisPerCase, payload, () -> InternetChecksum.checkSum(payload, 0, payload.length));
+            CRC32C crc = new CRC32C();
+            double crc32c = measure(millisPerCase, payload, () -> {
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                return crc.getValue();
+            });
+            System.out.printf("%8d %16.1f %16.1f %16.1f%n", size, original, word, crc32c);
+        }
+        if (blackhole == 42) System.out.println();
+    }
+
+    /** measure
+     * Runs the checksum for millis after an equal warm up period
+     *
+     * @param millis: measurement time
+     * @param payload: bytes summed per call
+     * @param checkSum: checksum call under test
+     * @return throughput in MB/s
+     */
+    private static double measure(long millis, byte[] payload, Checksum checkSum) {
+        for (long end = System.nanoTime() + millis * 1_000_000L; System.nanoTime() < end; )
+            for (int i = 0; i < 1000; i++) blackhole += checkSum.run();
+        long calls = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1_000_000L;
+        long now;
+        do {
+            for (int i = 0; i < 1000; i++) blackhole += checkSum.run();
+            calls += 1000;
+        } while ((now = System.nanoTime()) < end);
+        return (double) calls * payload.length / ((now - start) / 1e9) / (1 << 20);
+    }
+
+    private interface Checksum {
+        long run();
+    }
+
+    //The original Packet.CheckSum loop, kept only as the baseline for this benchmark
+    private static short legacyCheckSum(byte[] packetBytes, int offset, int length) {
+        long sum = 0;
+        int packetByteLength = length;
+        int count = offset;
+        while (packetByteLength > 1) {
+            sum += ((packetBytes[count]) << 8 & 0xFF00) | ((packetBytes[count + 1]) & 0x00FF);
+            if ((sum & 0xFFFF0000) > 0) {
+                sum = ((sum & 0xFFFF) + 1);
+            }
+            count += 2;
+            packetByteLength -= 2;
+        }
+        if (packetByteLength > 0) {
+            sum += (packetBytes[count] << 8 & 0xFF00);
+            if ((sum & 0xFFFF0000) > 0) {
+                sum = ((sum & 0xFFFF) + 1);
+            }
+        }
+        return (short) (~sum & 0xFFFF);
+    }
+}
@@ -0,0 +1,92 @@
+/** CongestionControl Interface
+ * Decides how many segments the SlidingWindowSender may have in flight and, for paced controllers,
+ * when the next one may leave. The sender reports newly acknowledged segments, losses found by
+ * duplicate ACKs and retransmission timeouts; a NAK means the Gremlin damaged a segment rather than
+ * the network dropping it, so NAKs are not reported as congestion.
+ *
+ * The window never grows past the window the transfer was started with, which is the most the
+ * client has room to buffer.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+interface CongestionControl {
+
+    String DEFAULT_NAME = "reno";
+    int INITIAL_WINDOW = 10;    //segments sent before the first ACK, as in RFC 6928
+
+    /** getWindow
+     * @return segments that may be unacknowledged at once, at least 1
+     */
+    int getWindow();
+
+    /** onAck
+     * @param acknowledged: segments newly acknowledged by this ACK, cumulatively or selectively
+     * @param rtt: round trip estimate, already updated with any sample this ACK gave
+     * @param now: current System.nanoTime()
+     */
+    void onAck(int acknowledged, RttEstimator rtt, long now);
+
+    /** onLoss
+     * A segment was found missing by duplicate ACKs. Called at most once per window of data.
+     *
+     * @param now: current System.nanoTime()
+     */
+    void onLoss(long now);
+
+    /** onTimeout
+     * A segment's retransmission timer ran out. Called at most once per window of data.
+     *
+     * @param now: current System.nanoTime()
+     */
+    void onTimeout(long now);
+
+    /** onSend
+     * @param now: System.nanoTime() a segment was put on the wire
+     */
+    default void onSend(long now) {
+    }
+
+    /** getNextSendTime
+     * @return earliest System.nanoTime() the next segment may be sent; Long.MIN_VALUE when not paced
+     */
+    default long getNextSendTime() {
+        return Long.MIN_VALUE;
+    }
+
+    /** getName
+     * @return name used on the command line and in the Congestion request header
+     */
+    String getName();
+
+    /** create
+     * Builds a controller by its command line / header name. Any name may end in "-paced" to
+     * spread its window evenly over a round trip instead of sending it in bursts.
+     *
+     * @param name: "none", "reno" or "cubic", optionally followed by "-paced", case insensitive
+     * @param maxWindow: largest window the transfer allows
+     * @return a new controller for one transfer
+     */
+    static CongestionControl create(String name, int maxWindow) {
+        String base = name.trim().toLowerCase();
+        boolean paced = base.endsWith(PacedCongestionControl.SUFFIX);
+        if (paced)
+            base = base.substring(0, base.length() - PacedCongestionControl.SUFFIX.length());
+        CongestionControl control;
+        switch (base) {
+            case "none":
+                control = new FixedWindowCongestionControl(maxWindow);
+                break;
+            case "reno":
+                control = new RenoCongestionControl(maxWindow);
+                break;
+            case "cubic":
+                control = new CubicCongestionControl(maxWindow);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown congestion control: " + name
+                        + " (expected none, reno or cubic, optionally with -paced)");
+        }
+        return paced ? new PacedCongestionControl(control) : control;
+    }
+}
@@ -0,0 +1,84 @@
+/** CubicCongestionControl Class
+ * CUBIC style window growth (RFC 8312). After a loss the window is cut to BETA of its size and then
+ * follows a cubic curve in wall clock time that climbs quickly back towards the size it had when
+ * the loss happened, flattens out near it, and then probes beyond it. Growth never falls behind
+ * what Reno would reach in the same time, so it stays fair on short round trips.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class CubicCongestionControl implements CongestionControl {
+
+    private static final double C = 0.4;       //cubic scaling constant, segments per second cubed
+    private static final double BETA = 0.7;    //window kept after a loss
+
+    private final int maxWindow;
+    private double window;
+    private double slowStartThreshold;
+    private double lastMaxWindow;   //window when the last loss happened
+    private double renoWindow;      //what Reno would have reached since the loss
+    private long epochStart = -1;   //System.nanoTime() the current growth curve started, -1 for none
+    private double k;               //seconds the curve takes to climb back to lastMaxWindow
+
+    /** CubicCongestionControl
+     *
+     * @param maxWindow: largest window the transfer allows
+     */
+    CubicCongestionControl(int maxWindow) {
+        this.maxWindow = maxWindow;
+        this.window = Math.min(INITIAL_WINDOW, maxWindow);
+        this.slowStartThreshold = maxWindow;
+    }
+
+    @Override
+    public int getWindow() {
+        return Math.max(1, (int) window);
+    }
+
+    @Override
+    public void onAck(int acknowledged, RttEstimator rtt, long now) {
+        if (window < slowStartThreshold) {
+            window = Math.min(window + acknowledged, maxWindow);
+            return;
+        }
+        if (epochStart < 0) {   //first ACK since the loss, start a new curve
+            epochStart = now;
+            if (window < lastMaxWindow) {
+                k = Math.cbrt((lastMaxWindow - window) / C);
+            } else {
+                k = 0;
+                lastMaxWindow = window;
+            }
+            renoWindow = window;
+        }
+        //aim for where the curve will be one round trip from now
+        double t = (now - epochStart + Math.max(0, rtt.getSmoothedRtt())) / 1e9;
+        double target = lastMaxWindow + C * Math.pow(t - k, 3);
+        renoWindow += 3 * (1 - BETA) / (1 + BETA) * acknowledged / window;
+        if (target > window)
+            window += (target - window) / window * acknowledged;
+        else
+            window += 0.01 * acknowledged / window;    //plateau, creep up slowly
+        window = Math.min(Math.max(window, renoWindow), maxWindow);
+    }
+
+    @Override
+    public void onLoss(long now) {
+        epochStart = -1;
+        //fast convergence: release bandwidth sooner when the loss came before reaching the old peak
+        lastMaxWindow = window < lastMaxWindow ? window * (1 + BETA) / 2 : window;
+        window = Math.max(2, window * BETA);
+        slowStartThreshold = window;
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        onLoss(now);
+        window = 1;
+    }
+
+    @Override
+    public String getName() {
+        return "cubic";
+    }
+}
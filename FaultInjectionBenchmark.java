@@ -0,0 +1,102 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** FaultInjectionBenchmark Class
+ * Stress test of the FaultInjector and the error detection behind it. Pushes packets through the
+ * injector as fast as it takes them, inline and then with 1, 2, 4, ... worker threads, and for each
+ * run prints the packets per second, the faults applied, how many damaged packets the checksum
+ * caught and how many it missed. Every run uses the same seed, so the faults must come out the same
+ * in every run; the benchmark fails if they do not.
+ * Run using java FaultInjectionBenchmark [packets] [maxWorkers] [seed] [faults]
+ * e.g. java FaultInjectionBenchmark 1000000 4 4320 drop=0.01,damage=0.05,duplicate=0.01
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public class FaultInjectionBenchmark {
+
+    private static final int PACKET_SIZE = Packet.DEFAULT_PACKET_SIZE;
+
+    public static void main(String args[]) throws Exception {
+        long packets = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int maxWorkers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 4320;
+        FaultInjector.Faults faults = FaultInjector.Faults.gremlin(0.05, 0.01).with(args.length > 3 ? args[3]
+                : "duplicate=0.01,reorder=0.01,reorderMs=1,delay=0.01,delayMs=1");
+        System.out.println("Injecting " + faults);
+
+        byte[] data = new byte[PACKET_SIZE - Packet.HEADER_SIZE];
+        new Random(seed).nextBytes(data);
+        Packet template = new Segmenter(new ByteBuffer[]{ByteBuffer.wrap(data)}, PACKET_SIZE).next();
+
+        run(template, packets / 10, 0, seed, faults, false);   //warm up the JIT and the packet pool
+        System.out.printf("%8s %12s %10s %10s %10s %10s %10s %10s %10s%n", "workers", "packets/s", "dropped",
+                "damaged", "duplicated", "reordered", "delayed", "caught", "missed");
+        String expected = null;
+        for (int workers = 0; workers <= maxWorkers; workers = Math.max(1, workers * 2)) {
+            String faultCounts = run(template, packets, workers, seed, faults, true);
+            if (expected == null)
+                expected = faultCounts;
+            else if (!expected.equals(faultCounts))
+                throw new AssertionError("Faults differ with " + workers + " workers: " + faultCounts + " vs " + expected);
+        }
+        System.out.println("Same faults in every run");
+        template.release();
+    }
+
+    /** run
+     * Sends copies of template through an injector until packets have gone in and everything due has come out
+     *
+     * @param template: packet every input is a copy of
+     * @param packets: packets to inject
+     * @param workers: injector worker threads, 0 for inline
+     * @param seed: injector seed
+     * @param faults: what the injector does
+     * @param print: print the results
+     * @return the fault counters, which must not depend on workers
+     */
+    private static String run(Packet template, long packets, int workers, long seed, FaultInjector.Faults faults,
+                              boolean print) throws Exception {
+        long[] produced = {0};     //only touched by the thread polling the source
+        FaultInjector.Source source = (timeout, unit) -> {
+            if (produced[0] == packets)
+                return null;
+            produced[0]++;
+            return template.duplicate();
+        };
+        FaultInjector injector = new FaultInjector(source, faults, seed, workers, new TransferMetrics());
+        long caught = 0;
+        long missed = 0;
+        long start = System.nanoTime();
+        long end = start;
+        Packet packet;
+        while ((packet = injector.poll(100, TimeUnit.MILLISECONDS)) != null) {
+            if (!packet.isCheckSumValid())
+                caught++;
+            else if (!sameData(packet, template))
+                missed++;   //damage the checksum cannot see
+            packet.release();
+            end = System.nanoTime();
+        }
+        double seconds = Math.max(1e-9, (end - start) / 1e9);
+        injector.close();
+        if (print)
+            System.out.printf("%8s %12.0f %10d %10d %10d %10d %10d %10d %10d%n", workers == 0 ? "inline" : workers,
+                    packets / seconds, injector.getDropped(), injector.getDamaged(), injector.getDuplicated(),
+                    injector.getReordered(), injector.getDelayed(), caught, missed);
+        return injector.getDropped() + "/" + injector.getDamaged() + "/" + injector.getDuplicated() + "/"
+                + injector.getReordered() + "/" + injector.getDelayed() + "/" + caught + "/" + missed;
+    }
+
+    //True if the packet's data is the template's
+    private static boolean sameData(Packet packet, Packet template) {
+        if (packet.getPacketDataSize() != template.getPacketDataSize())
+            return false;
+        for (int i = 0; i < packet.getPacketDataSize(); i++) {
+            if (packet.GETPacketData(i) != template.GETPacketData(i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,486 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** FaultInjector Class
+ * The Gremlin, as a stage of the client receive path between the ReceiveEngine and the protocol.
+ * Packets are dropped, damaged, delayed, held back so later ones overtake them, or duplicated as
+ * they arrive, so the protocol sees the faults in real time just as it would from a bad network.
+ *
+ * Every packet's fate is drawn from its own random stream, derived from the seed and the packet's
+ * arrival index, so the same seed gives the same faults for the same arrivals however the work is
+ * spread. With no worker threads the faults are applied inline by the thread that polls; with
+ * workers a feeder thread takes packets from the source and the workers apply the faults in
+ * parallel, for stress tests at rates one thread cannot keep up with. Delivery order between
+ * packets due at the same moment may then vary; which faults hit which packet does not.
+ * With no faults at all packets are polled straight from the source, and inline a packet that is
+ * neither delayed, reordered nor duplicated is handed over at once rather than through the queue of
+ * held packets, so the receive path allocates and locks nothing per packet unless a fault needs it.
+ * Each fault is counted, and drops and damage also go to the TransferMetrics.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class FaultInjector implements Closeable {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long FEEDER_POLL_MS = 50;     //how often the feeder checks whether the injector was closed
+
+    /** Source Interface
+     * Where the injector takes packets from, such as ReceiveEngine::poll; polled by one thread only
+     */
+    interface Source {
+        Packet poll(long timeout, TimeUnit unit) throws IOException;
+    }
+
+    private final Source source;
+    private final Faults faults;
+    private final long seed;
+    private final TransferMetrics metrics;
+    private final DelayQueue<Held> held = new DelayQueue<>();
+    private final Thread feeder;            //null when the faults are applied inline
+    private final ExecutorService workers;
+    private final Dice inlineDice = new Dice(0);    //reseeded for each packet the polling thread injects
+    private long nextIndex;                 //arrival index, written only by the thread that takes from the source
+    private volatile IOException failure;   //why the feeder stopped
+    private volatile boolean closed;
+
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder damaged = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+    private final LongAdder reordered = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+
+    /** FaultInjector
+     *
+     * @param source: packets as they arrive
+     * @param faults: what to do to them
+     * @param seed: seed for the random choices, so runs can be repeated
+     * @param workerThreads: threads that apply the faults, 0 to apply them inline in poll(); no
+     * threads are started when there are no faults to apply
+     * @param metrics: counters drops and damage are added to
+     */
+    FaultInjector(Source source, Faults faults, long seed, int workerThreads, TransferMetrics metrics) {
+        if (workerThreads < 0)
+            throw new IllegalArgumentException("Worker threads must not be negative: " + workerThreads);
+        this.source = source;
+        this.faults = faults;
+        this.seed = seed;
+        this.metrics = metrics;
+        if (workerThreads == 0 || !faults.isActive()) {
+            feeder = null;
+            workers = null;
+            return;
+        }
+        workers = Executors.newFixedThreadPool(workerThreads, task -> {
+            Thread thread = new Thread(task, "fault-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        feeder = new Thread(this::feed, "fault-feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    /** poll
+     * Waits up to timeout for the next packet that survived the faults and is due
+     *
+     * @return next packet, owned by the caller until released, or null if none was due in time
+     * @throws IOException if the source failed
+     */
+    Packet poll(long timeout, TimeUnit unit) throws IOException {
+        if (!faults.isActive()) {
+            Packet packet = source.poll(timeout, unit);
+            if (packet != null)
+                passed.increment();
+            return packet;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            Held due = held.poll();
+            if (due != null)
+                return due.packet;
+            if (failure != null)
+                throw failure;
+            long now = System.nanoTime();
+            Held next = held.peek();
+            long untilDue = next == null ? Long.MAX_VALUE : next.releaseAt - now;
+            if (deadline - now <= 0 && untilDue > 0)
+                return null;
+            long wait = Math.max(0, Math.min(deadline - now, untilDue));
+            if (workers == null) {
+                Packet packet = source.poll(wait, TimeUnit.NANOSECONDS);
+                if (packet == null)
+                    continue;
+                long index = nextIndex++;
+                long arrivedAt = System.nanoTime();
+                packet = inject(packet, index, arrivedAt, inlineDice);
+                if (packet == null)
+                    continue;
+                //due now: hand it over unless a held packet is due first and must come out ahead of it
+                if (!faults.holdsPackets() || !isHeldDueBy(arrivedAt))
+                    return packet;
+                held.put(new Held(packet, arrivedAt, index * 2));
+            } else {
+                try {
+                    due = held.poll(wait, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                if (due != null)
+                    return due.packet;
+            }
+        }
+    }
+
+    /** close
+     * Stops the feeder and workers and releases packets still held back. The source is not closed,
+     * and must only be closed after this returns.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (feeder != null) {
+            try {
+                feeder.join();
+                workers.shutdown();
+                workers.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Held left;
+        while ((left = held.poll()) != null || (left = drainOne()) != null)
+            left.packet.release();
+    }
+
+    //True if a held packet is due at or before the given time
+    private boolean isHeldDueBy(long time) {
+        Held next = held.peek();
+        return next != null && next.releaseAt <= time;
+    }
+
+    //Takes a held packet whether it is due or not
+    private Held drainOne() {
+        Held next = held.peek();
+        return next != null && held.remove(next) ? next : null;
+    }
+
+    /** getFaults
+     * @return what the injector does to packets
+     */
+    Faults getFaults() {
+        return faults;
+    }
+
+    long getPassed() {
+        return passed.sum();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getDamaged() {
+        return damaged.sum();
+    }
+
+    long getDuplicated() {
+        return duplicated.sum();
+    }
+
+    long getReordered() {
+        return reordered.sum();
+    }
+
+    long getDelayed() {
+        return delayed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Faults: " + getPassed() + " passed, " + getDropped() + " dropped, " + getDamaged() + " damaged, "
+                + getDuplicated() + " duplicated, " + getReordered() + " reordered, " + getDelayed() + " delayed";
+    }
+
+    //Feeder thread: numbers the packets as they arrive and hands them to the workers
+    private void feed() {
+        try {
+            while (!closed) {
+                Packet packet = source.poll(FEEDER_POLL_MS, TimeUnit.MILLISECONDS);
+                if (packet == null)
+                    continue;
+                long index = nextIndex++;
+                long arrivedAt = System.nanoTime();
+                workers.execute(() -> {
+                    Packet due = inject(packet, index, arrivedAt, new Dice(0));
+                    if (due != null)
+                        held.put(new Held(due, arrivedAt, index * 2));
+                });
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    //Applies the faults drawn for the packet at index. A packet that is due on arrival is returned for the
+    //caller to deliver; a delayed, reordered or duplicated one is held (with any copy) until it is due.
+    //Returns null if the packet was dropped or held.
+    private Packet inject(Packet packet, long index, long arrivedAt, Dice dice) {
+        dice.reseed(Dice.mix64(seed + index * GOLDEN_GAMMA));
+        if (dice.chance(faults.dropRate)) {
+            dropped.increment();
+            metrics.onGremlinDrop();
+            packet.release();   //as if it never arrived
+            return null;
+        }
+        if (dice.chance(faults.damageRate) && packet.getPacketDataSize() > 0) {
+            damage(packet, dice);
+            damaged.increment();
+            metrics.onGremlinDamage();
+        }
+        long releaseAt = arrivedAt;
+        if (dice.chance(faults.delayRate)) {
+            //exponential, so most delays are short and a few are long
+            releaseAt += (long) (-Math.log(1 - dice.nextDouble()) * faults.meanDelayMs * 1_000_000L);
+            delayed.increment();
+        }
+        if (dice.chance(faults.reorderRate)) {
+            releaseAt += faults.reorderMs * 1_000_000L;    //packets after it keep their times and overtake it
+            reordered.increment();
+        }
+        Packet copy = null;
+        if (dice.chance(faults.duplicateRate)) {
+            copy = packet.duplicate();
+            duplicated.increment();
+        }
+        passed.increment();
+        if (copy == null && releaseAt == arrivedAt)
+            return packet;
+        held.put(new Held(packet, releaseAt, index * 2));
+        if (copy != null)
+            held.put(new Held(copy, releaseAt, index * 2 + 1));
+        return null;
+    }
+
+    //Flips every bit of 1 or more distinct data bytes, how many drawn from the damage weights
+    private void damage(Packet packet, Dice dice) {
+        int bytes = 1 + dice.pick(faults.damagedBytesWeights);
+        int size = packet.getPacketDataSize();
+        int[] flipped = new int[Math.min(bytes, size)];
+        for (int i = 0; i < flipped.length; i++) {
+            int index;
+            do {
+                index = dice.nextInt(size);
+            } while (contains(flipped, i, index));     //flipping a byte twice would undo the damage
+            flipped[i] = index;
+            packet.setPacketData(index, (byte) ~packet.GETPacketData(index));
+        }
+    }
+
+    //True if value is among the first count entries of values
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value)
+                return true;
+        }
+        return false;
+    }
+
+    /** Faults Class
+     * What the injector does to packets; rates are probabilities per packet
+     */
+    static class Faults {
+        //the Gremlin's original damage: 1 byte 50% of the time, 2 bytes 30%, 3 bytes 20%
+        static final int[] GREMLIN_DAMAGE_WEIGHTS = {50, 30, 20};
+        static final Faults NONE = new Faults(0, 0, GREMLIN_DAMAGE_WEIGHTS, 0, 0, 0, 0, 0);
+
+        final double dropRate;
+        final double damageRate;
+        final int[] damagedBytesWeights;    //weight of damaging 1, 2, 3, ... bytes
+        final double duplicateRate;
+        final double reorderRate;
+        final long reorderMs;               //how long a reordered packet is held back
+        final double delayRate;
+        final long meanDelayMs;             //mean of the exponentially distributed delay
+
+        /** Faults
+         *
+         * @param dropRate: probability a packet is dropped
+         * @param damageRate: probability a packet's data is damaged
+         * @param damagedBytesWeights: relative weight of damaging 1, 2, 3, ... bytes of a damaged packet
+         * @param duplicateRate: probability a packet is delivered twice
+         * @param reorderRate: probability a packet is held back reorderMs so later ones overtake it
+         * @param reorderMs: how long a reordered packet is held back
+         * @param delayRate: probability a packet is delayed
+         * @param meanDelayMs: mean delay, exponentially distributed
+         */
+        Faults(double dropRate, double damageRate, int[] damagedBytesWeights, double duplicateRate, double reorderRate,
+               long reorderMs, double delayRate, long meanDelayMs) {
+            if (damagedBytesWeights.length == 0 || Arrays.stream(damagedBytesWeights).sum() <= 0)
+                throw new IllegalArgumentException("Damage weights must add up to more than 0");
+            this.dropRate = dropRate;
+            this.damageRate = damageRate;
+            this.damagedBytesWeights = damagedBytesWeights.clone();
+            this.duplicateRate = duplicateRate;
+            this.reorderRate = reorderRate;
+            this.reorderMs = reorderMs;
+            this.delayRate = delayRate;
+            this.meanDelayMs = meanDelayMs;
+        }
+
+        /** gremlin
+         * @param damageRate: probability a packet's data is damaged
+         * @param dropRate: probability a packet is dropped
+         * @return the faults of the original Gremlin
+         */
+        static Faults gremlin(double damageRate, double dropRate) {
+            return new Faults(dropRate, damageRate, GREMLIN_DAMAGE_WEIGHTS, 0, 0, 0, 0, 0);
+        }
+
+        /** with
+         * Overrides some faults from a setting such as "duplicate=0.01,reorder=0.02,reorderMs=5,delay=0.1,
+         * delayMs=2,drop=0.05,damage=0.1,damageBytes=50/30/20"
+         *
+         * @param setting: comma separated name=value pairs, or "" for none
+         * @return faults with those values replaced
+         */
+        Faults with(String setting) {
+            double drop = dropRate, damage = damageRate, duplicate = duplicateRate, reorder = reorderRate, delay = delayRate;
+            long reorderHold = reorderMs, meanDelay = meanDelayMs;
+            int[] weights = damagedBytesWeights;
+            for (String pair : setting.split(",")) {
+                if (pair.trim().isEmpty())
+                    continue;
+                int equals = pair.indexOf('=');
+                if (equals < 0)
+                    throw new IllegalArgumentException("Bad fault setting: " + pair + " (expected name=value)");
+                String name = pair.substring(0, equals).trim();
+                String value = pair.substring(equals + 1).trim();
+                switch (name) {
+                    case "drop": drop = Double.parseDouble(value); break;
+                    case "damage": damage = Double.parseDouble(value); break;
+                    case "damageBytes": weights = Arrays.stream(value.split("/")).mapToInt(Integer::parseInt).toArray(); break;
+                    case "duplicate": duplicate = Double.parseDouble(value); break;
+                    case "reorder": reorder = Double.parseDouble(value); break;
+                    case "reorderMs": reorderHold = Long.parseLong(value); break;
+                    case "delay": delay = Double.parseDouble(value); break;
+                    case "delayMs": meanDelay = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown fault: " + name);
+                }
+            }
+            return new Faults(drop, damage, weights, duplicate, reorder, reorderHold, delay, meanDelay);
+        }
+
+        /** isActive
+         * @return true if any fault can happen
+         */
+        boolean isActive() {
+            return dropRate > 0 || damageRate > 0 || holdsPackets();
+        }
+
+        /** holdsPackets
+         * @return true if a packet can be held back or copied, rather than only dropped or damaged
+         */
+        boolean holdsPackets() {
+            return duplicateRate > 0 || reorderRate > 0 || delayRate > 0;
+        }
+
+        @Override
+        public String toString() {
+            return dropRate + " drop, " + damageRate + " damage " + Arrays.toString(damagedBytesWeights) + ", "
+                    + duplicateRate + " duplicate, " + reorderRate + " reorder by " + reorderMs + " ms, "
+                    + delayRate + " delay by " + meanDelayMs + " ms mean";
+        }
+    }
+
+    /** Dice Class
+     * SplitMix64 stream of random numbers for one packet; cheap enough to start one per packet. Each
+     * packet's stream starts from a mixed state: started a step apart, packet i + 1 would draw exactly
+     * what packet i drew one roll later, so faults on neighbouring packets would go together.
+     */
+    private static class Dice {
+        private long state;
+
+        Dice(long seed) {
+            this.state = seed;
+        }
+
+        //Starts the stream again from another seed, so one Dice can serve packet after packet
+        void reseed(long seed) {
+            this.state = seed;
+        }
+
+        long nextLong() {
+            return mix64(state += GOLDEN_GAMMA);
+        }
+
+        //SplitMix64 finalizer: nearby inputs give unrelated outputs
+        static long mix64(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        int nextInt(int bound) {
+            return (int) ((nextLong() >>> 33) * bound >>> 31);
+        }
+
+        //True with the given probability; always draws, so later draws do not depend on earlier outcomes
+        boolean chance(double probability) {
+            return nextDouble() < probability;
+        }
+
+        //Index drawn in proportion to its weight
+        int pick(int[] weights) {
+            int total = 0;
+            for (int weight : weights) total += weight;
+            int roll = nextInt(total);
+            for (int i = 0; i < weights.length; i++) {
+                roll -= weights[i];
+                if (roll < 0)
+                    return i;
+            }
+            return weights.length - 1;
+        }
+    }
+
+    /** Held Class
+     * Packet waiting in the injector until it is due
+     */
+    private static class Held implements Delayed {
+        final Packet packet;
+        final long releaseAt;
+        final long order;   //arrival order, a duplicate right behind its original, for packets due together
+
+        Held(Packet packet, long releaseAt, long order) {
+            this.packet = packet;
+            this.releaseAt = releaseAt;
+            this.order = order;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(releaseAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Held that = (Held) other;
+            int byTime = Long.compare(releaseAt, that.releaseAt);
+            return byTime != 0 ? byTime : Long.compare(order, that.order);
+        }
+    }
+}
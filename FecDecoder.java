@@ -0,0 +1,274 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/** FecDecoder Class
+ * Client side of FecEncoder. Every undamaged data segment is XORed into its group as it arrives,
+ * and so is the group's parity segment, so once a group is missing exactly one segment its
+ * accumulator holds that segment's data, length, flags and stream. The rebuilt segment is handed on as if
+ * it had arrived, without waiting for a retransmission. Segments that fail ErrorDetection are
+ * treated as missing.
+ *
+ * A segment missing when its group's parity arrives is counted as lost unless it is rebuilt, or it
+ * turns up less than half a round trip later: a retransmission asked for as the gap showed, a few
+ * segments before the parity, cannot come back that soon, so it was only reordered behind the
+ * parity. A segment that arrives later than that was resent by the server, which is the round trip
+ * FEC is meant to save.
+ *
+ * Only the most recent blocks (about a window's worth) are tracked, and their buffers are reused.
+ * Segments and parity for a block older than one already retired are late retransmissions and are
+ * ignored, so they cannot push out a block whose parity is still on its way.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class FecDecoder {
+
+    private final int blockSize;
+    private final int parityCount;
+    private final int packetSize;
+    private final int maxBlocks;
+    private final Map<Integer, Block> blocks;
+    private final ArrayDeque<Block> freeBlocks = new ArrayDeque<>();
+    private final CRC32C crc = new CRC32C();
+    private int retiredBelow;   //blocks starting below this have been retired
+    private int recovered;      //segments rebuilt from parity
+    private int unrecovered;    //segments still missing when their parity arrived, left to retransmission
+    private long reorderWindow; //nanoseconds; a missing segment arriving sooner after its parity was reordered
+    private int parityReceived;
+    private long parityBytes;
+
+    /** FecDecoder
+     *
+     * @param blockSize: data segments per block, k, as sent in the FEC header
+     * @param parityCount: parity segments per block, m
+     * @param packetSize: negotiated packet size
+     * @param windowSize: receive window, which bounds how many blocks can be in progress
+     */
+    FecDecoder(int blockSize, int parityCount, int packetSize, int windowSize) {
+        this.blockSize = blockSize;
+        this.parityCount = parityCount;
+        this.packetSize = packetSize;
+        this.maxBlocks = windowSize / blockSize + 2;
+        this.blocks = new LinkedHashMap<Integer, Block>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+                if (size() <= maxBlocks)
+                    return false;
+                retiredBelow = Math.max(retiredBelow, eldest.getKey() + blockSize);
+                freeBlocks.addFirst(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /** onData
+     * Adds an undamaged data segment to its group. Call before handing the segment to the receiver.
+     *
+     * @param data: data segment that passed ErrorDetection; still owned by the caller
+     * @param rebuilt: receives any segment this made recoverable, owned by the caller
+     */
+    void onData(Packet data, List<Packet> rebuilt) {
+        int segment = data.getSegmentNumber();
+        Block block = block(segment - segment % blockSize);
+        if (block == null)
+            return;     //late retransmission for a retired block
+        int position = segment - block.start;
+        if ((block.received & (1L << position)) != 0)
+            return;     //duplicate or already rebuilt
+        block.received |= 1L << position;
+        Group group = block.groups[position % parityCount];
+        group.add(data, 0, data.getPacketDataSize(), data.getFlags(), data.getStreamId());
+        if (!group.hasParity)
+            return;
+        if (System.nanoTime() - group.parityAt < reorderWindow)
+            unrecovered--;      //was counted as lost when the parity arrived, but was only reordered
+        if (group.missing(block, position % parityCount) == 1) {
+            unrecovered--;      //was counted as lost when the parity arrived, but can now be rebuilt
+            rebuild(block, position % parityCount, rebuilt);
+        }
+    }
+
+    /** onParity
+     * Adds a parity segment and rebuilds its group's missing segment if exactly one is missing
+     *
+     * @param parity: parity segment, released here
+     * @param rebuilt: receives the rebuilt segment, owned by the caller
+     */
+    void onParity(Packet parity, List<Packet> rebuilt) {
+        try {
+            if (!parity.isCheckSumValid() || parity.getPacketDataSize() < FecEncoder.PARITY_HEADER_SIZE
+                    || !isCrcValid(parity))
+                return;     //damaged parity is no use
+            int start = parity.getSegmentNumber();
+            int index = parity.GETPacketData(0) & 0xFF;
+            if (start % blockSize != 0 || index >= parityCount)
+                return;
+            Block block = block(start);
+            if (block == null)
+                return;
+            Group group = block.groups[index];
+            if (group.hasParity)
+                return;
+            parityReceived++;
+            parityBytes += parity.getPacketDataSize();
+            group.hasParity = true;
+            group.parityAt = System.nanoTime();
+            group.size = parity.GETPacketData(1) & 0xFF;
+            int length = (parity.GETPacketData(3) & 0xFF) << 8 | (parity.GETPacketData(4) & 0xFF);
+            int stream = (parity.GETPacketData(5) & 0xFF) << 8 | (parity.GETPacketData(6) & 0xFF);
+            group.add(parity, FecEncoder.PARITY_HEADER_SIZE, length, parity.GETPacketData(2), stream);
+            int missing = group.missing(block, index);
+            if (missing == 1)
+                rebuild(block, index, rebuilt);
+            else
+                unrecovered += missing;
+        } finally {
+            parity.release();
+        }
+    }
+
+    /** setRoundTrip
+     * @param roundTrip: round trip to the server in nanoseconds, which bounds how soon a lost segment
+     * can be resent; until it is set every segment missing when its parity arrived counts as lost
+     */
+    void setRoundTrip(long roundTrip) {
+        this.reorderWindow = Math.max(0, roundTrip / 2);
+    }
+
+    /** getRecovered
+     * @return number of segments rebuilt from parity
+     */
+    int getRecovered() {
+        return recovered;
+    }
+
+    /** getUnrecovered
+     * @return number of segments that were missing when their parity arrived, could not be rebuilt and
+     * did not turn up within half a round trip
+     */
+    int getUnrecovered() {
+        return unrecovered;
+    }
+
+    /** describe
+     * @param dataBytes: response bytes received, for the parity overhead
+     * @return recovery rate and parity cost of the transfer
+     */
+    String describe(long dataBytes) {
+        int lost = recovered + unrecovered;
+        return String.format("FEC %d/%d: rebuilt %d of %d lost or damaged segments (%.0f%%), %d parity segments "
+                        + "cost %.1f%% extra bandwidth", blockSize, parityCount, recovered, lost,
+                lost == 0 ? 100.0 : 100.0 * recovered / lost, parityReceived,
+                dataBytes == 0 ? 0.0 : 100.0 * parityBytes / dataBytes);
+    }
+
+    //Compares the parity's CRC32C with its data, which catches damage the packet checksum misses
+    private boolean isCrcValid(Packet parity) {
+        crc.reset();
+        parity.updatePacketData(crc, 0, FecEncoder.PARITY_CRC);
+        parity.updatePacketData(crc, FecEncoder.PARITY_HEADER_SIZE,
+                parity.getPacketDataSize() - FecEncoder.PARITY_HEADER_SIZE);
+        int expected = 0;
+        for (int i = 0; i < Integer.BYTES; i++)
+            expected = expected << 8 | (parity.GETPacketData(FecEncoder.PARITY_CRC + i) & 0xFF);
+        return expected == (int) crc.getValue();
+    }
+
+    //Finds the block starting at start, reusing a retired block's buffers for a new one, or null if a
+    //block after it was already retired
+    private Block block(int start) {
+        Block block = blocks.get(start);
+        if (block == null) {
+            if (start < retiredBelow)
+                return null;
+            block = freeBlocks.isEmpty() ? new Block() : freeBlocks.pollFirst();
+            block.reset(start);
+            blocks.put(start, block);
+        }
+        return block;
+    }
+
+    //The group's accumulator now holds its one missing segment; turns it back into a data packet
+    private void rebuild(Block block, int index, List<Packet> rebuilt) {
+        Group group = block.groups[index];
+        int position = -1;
+        for (int member = index; member < blockSize && position < 0; member += parityCount) {
+            if ((block.received & (1L << member)) == 0)
+                position = member;
+        }
+        if (position < 0 || group.length < 0 || group.length > packetSize - Packet.HEADER_SIZE)
+            return;     //inconsistent parity, leave it to retransmission
+        Packet packet = Packet.acquire(Packet.HEADER_SIZE + group.length);
+        packet.fill(ByteBuffer.wrap(group.data, 0, group.length), group.length);
+        packet.seal(Packet.TYPE_DATA, block.start + position, group.stream, (byte) group.flags);
+        block.received |= 1L << position;
+        recovered++;
+        rebuilt.add(packet);
+    }
+
+    /** Block Class
+     * Groups of one block of blockSize segments
+     */
+    private class Block {
+        int start;
+        long received;  //bit i set when segment start + i has arrived or been rebuilt
+        final Group[] groups = new Group[parityCount];
+
+        Block() {
+            for (int i = 0; i < parityCount; i++) groups[i] = new Group();
+        }
+
+        void reset(int start) {
+            this.start = start;
+            this.received = 0;
+            for (Group group : groups) group.reset();
+        }
+    }
+
+    /** Group Class
+     * XOR of everything received so far for one parity group
+     */
+    private class Group {
+        final byte[] data = new byte[packetSize - Packet.HEADER_SIZE];
+        int used;           //bytes of data that may be non zero
+        int length;         //XOR of the lengths
+        int flags;          //XOR of the flags
+        int stream;         //XOR of the stream ids
+        int size = -1;      //segments in the group, known once the parity arrives
+        boolean hasParity;
+        long parityAt;      //System.nanoTime() the parity arrived
+
+        void add(Packet packet, int index, int packetLength, int packetFlags, int packetStream) {
+            used = Math.max(used, packet.xorPacketData(index, data, 0));
+            length ^= packetLength;
+            flags ^= packetFlags;
+            stream ^= packetStream;
+        }
+
+        //Members of the group not yet received; groups in a short last block have fewer members
+        int missing(Block block, int index) {
+            int missing = 0;
+            int members = 0;
+            for (int member = index; member < blockSize && members < size; member += parityCount, members++) {
+                if ((block.received & (1L << member)) == 0)
+                    missing++;
+            }
+            return missing;
+        }
+
+        void reset() {
+            Arrays.fill(data, 0, used, (byte) 0);
+            used = 0;
+            length = 0;
+            flags = 0;
+            stream = 0;
+            size = -1;
+            hasParity = false;
+        }
+    }
+}
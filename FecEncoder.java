@@ -0,0 +1,177 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/** FecEncoder Class
+ * Forward error correction for the server side of a transfer. Every blockSize data segments are
+ * followed by parityCount XOR parity segments, so the client can rebuild a lost or damaged segment
+ * without waiting a round trip for the retransmission.
+ *
+ * Parity j covers the segments of its block whose position in the block is j modulo parityCount.
+ * Interleaving the groups this way lets a block recover from a burst of up to parityCount
+ * consecutive losses, or from one loss in each group.
+ *
+ * A parity segment carries the first segment of its block as its segment number, and its data is
+ * PARITY_HEADER_SIZE bytes of group information followed by the XOR of the group's data:
+ *   byte 0: group index j
+ *   byte 1: number of data segments in the group
+ *   byte 2: XOR of the group's flags, so the last segment and end of stream flags can be rebuilt
+ *   bytes 3-4: XOR of the group's data lengths, so a short last segment can be rebuilt
+ *   bytes 5-6: XOR of the group's stream ids, so a segment of a pipelined transfer can be rebuilt
+ *   bytes 7-10: CRC32C of the rest of the parity data
+ * The packet checksum cannot tell a 0x0000 word from 0xFFFF, and XOR parity over similar segments is
+ * mostly zero bytes, so damage that turns zeros into 0xFF would pass it and be copied into the
+ * rebuilt segment. The CRC catches that.
+ * Data segments are PARITY_HEADER_SIZE bytes shorter than the negotiated packet size so that the
+ * parity segments still fit in it.
+ *
+ * Parity segments are not acknowledged or retransmitted.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class FecEncoder {
+
+    static final int PARITY_HEADER_SIZE = 11;
+    static final int PARITY_CRC = 7;        //offset of the CRC32C in the parity header
+    static final int MAX_BLOCK_SIZE = 64;   //so one long can track which segments of a block arrived
+    static final String OFF = "off";
+
+    private final int blockSize;
+    private final int parityCount;
+    private final byte[][] parity;          //group header and XOR of the group's data, per group
+    private final int[] parityLength;       //longest data XORed into each group so far
+    private final ArrayDeque<Packet> ready = new ArrayDeque<>();
+    private final CRC32C crc = new CRC32C();
+    private int blockStart;
+    private int blockCount;                 //data segments added to the current block
+    private int paritySent;
+    private long parityBytes;
+    private long dataBytes;
+
+    /** FecEncoder
+     *
+     * @param blockSize: data segments per block, k
+     * @param parityCount: parity segments per block, m
+     * @param packetSize: negotiated packet size; parity segments are this big, data segments
+     *                  PARITY_HEADER_SIZE smaller
+     */
+    FecEncoder(int blockSize, int parityCount, int packetSize) {
+        this.blockSize = blockSize;
+        this.parityCount = parityCount;
+        this.parity = new byte[parityCount][packetSize - Packet.HEADER_SIZE];
+        this.parityLength = new int[parityCount];
+    }
+
+    /** parse
+     * Reads a "k/m" FEC setting from the command line or the FEC request header
+     *
+     * @param spec: "k/m" with 1 <= m <= k <= MAX_BLOCK_SIZE, or "off"
+     * @return {k, m}, or null when FEC is off
+     */
+    static int[] parse(String spec) {
+        if (spec.trim().equalsIgnoreCase(OFF))
+            return null;
+        String[] parts = spec.trim().split("/");
+        try {
+            if (parts.length == 2) {
+                int blockSize = Integer.parseInt(parts[0].trim());
+                int parityCount = Integer.parseInt(parts[1].trim());
+                if (parityCount >= 1 && parityCount <= blockSize && blockSize <= MAX_BLOCK_SIZE)
+                    return new int[]{blockSize, parityCount};
+            }
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+        throw new IllegalArgumentException("Bad FEC setting: " + spec + " (expected k/m with 1 <= m <= k <= "
+                + MAX_BLOCK_SIZE + ", or off)");
+    }
+
+    /** add
+     * Adds a data segment the first time it is sent. Segments must be added in segment order.
+     * Parity for a block becomes ready after its last segment, or after the response's last segment.
+     *
+     * @param data: sealed data segment; still owned by the caller
+     */
+    void add(Packet data) {
+        if (blockCount == 0)
+            blockStart = data.getSegmentNumber();
+        int group = (data.getSegmentNumber() - blockStart) % parityCount;
+        byte[] accumulator = parity[group];
+        int length = data.getPacketDataSize();
+        data.xorPacketData(0, accumulator, PARITY_HEADER_SIZE);
+        accumulator[1]++;
+        accumulator[2] ^= data.getFlags();
+        accumulator[3] ^= (byte) (length >>> 8);
+        accumulator[4] ^= (byte) length;
+        accumulator[5] ^= (byte) (data.getStreamId() >>> 8);
+        accumulator[6] ^= (byte) data.getStreamId();
+        parityLength[group] = Math.max(parityLength[group], length);
+        dataBytes += length;
+        if (++blockCount == blockSize || data.isLastSegment())
+            finishBlock();
+    }
+
+    /** hasParity
+     * @return true if parity segments are waiting to be sent
+     */
+    boolean hasParity() {
+        return !ready.isEmpty();
+    }
+
+    /** nextParity
+     * @return next parity segment to send, owned by the caller until released
+     */
+    Packet nextParity() {
+        return ready.pollFirst();
+    }
+
+    /** getParitySent
+     * @return number of parity segments produced
+     */
+    int getParitySent() {
+        return paritySent;
+    }
+
+    /** close
+     * Releases parity segments that were never sent
+     */
+    void close() {
+        Packet parityPacket;
+        while ((parityPacket = ready.pollFirst()) != null)
+            parityPacket.release();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FEC %d/%d: %d parity segments, %.1f%% overhead", blockSize, parityCount, paritySent,
+                dataBytes == 0 ? 0.0 : 100.0 * parityBytes / dataBytes);
+    }
+
+    //Turns each group that covered a segment into a parity packet and starts a new block
+    private void finishBlock() {
+        for (int group = 0; group < parityCount; group++) {
+            byte[] accumulator = parity[group];
+            if (accumulator[1] == 0)
+                continue;   //short last block with fewer segments than groups
+            accumulator[0] = (byte) group;
+            int length = PARITY_HEADER_SIZE + parityLength[group];
+            crc.reset();
+            crc.update(accumulator, 0, PARITY_CRC);
+            crc.update(accumulator, PARITY_HEADER_SIZE, length - PARITY_HEADER_SIZE);
+            int value = (int) crc.getValue();
+            for (int i = 0; i < Integer.BYTES; i++)
+                accumulator[PARITY_CRC + i] = (byte) (value >>> (24 - 8 * i));
+            Packet parityPacket = Packet.acquire(Packet.HEADER_SIZE + length);
+            parityPacket.fill(ByteBuffer.wrap(accumulator, 0, length), length);
+            parityPacket.seal(Packet.TYPE_PARITY, blockStart, (byte) 0);
+            ready.addLast(parityPacket);
+            paritySent++;
+            parityBytes += length;
+            Arrays.fill(accumulator, 0, length, (byte) 0);
+            parityLength[group] = 0;
+        }
+        blockCount = 0;
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/** FileResponse Class
+ * HTTP response for a requested file. The header is built separately and the file itself is
+ * memory mapped, so the body is served as raw bytes straight from the page cache without being
+ * read onto the heap.
+ *
+ * A request with a "Range: bytes=first-last" header gets a 206 Partial Content response that maps
+ * only those bytes, so a client can resume a download without the server touching the rest of the
+ * file. A range that starts past the end of the file gets an empty 416 response, and a Range header
+ * that cannot be parsed is ignored, as HTTP allows. "Range: stripe=i/n" asks for the i-th of n equal
+ * parts of the file, so a striped download can split a file it does not yet know the size of.
+ *
+ * A whole file requested with "Accept-Encoding: deflate" is sent deflated (zlib format, as HTTP
+ * defines it) with a "Content-Encoding: deflate" header, since the HTML and text served here usually
+ * shrink to a fraction of their size and every byte saved is a datagram the window does not have to
+ * carry. Data that is already compressed is found from a sample of its start and sent as it is, as
+ * are files over MAX_DEFLATE_SIZE, which would have to be deflated onto the heap, and ranges, whose
+ * offsets refer to the file rather than to its deflated form.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class FileResponse {
+
+    //a single MappedByteBuffer is limited to Integer.MAX_VALUE bytes, bigger files are mapped in chunks
+    private static final long MAX_MAP_SIZE = 1L << 30;
+    private static final String BYTES_UNIT = "bytes=";
+    private static final String STRIPE_UNIT = "stripe=";
+
+    static final String DEFLATE = "deflate";
+    //smaller bodies take about as many packets either way
+    static final long MIN_DEFLATE_SIZE = 512;
+    //largest body deflated, since the deflated copy is held on the heap
+    static final long MAX_DEFLATE_SIZE = 16L << 20;
+    //deflate only when it saves at least a tenth of the body
+    private static final double MAX_DEFLATE_RATIO = 0.9;
+    //bytes from the start of the body tried first, so incompressible files are found quickly
+    private static final int DEFLATE_SAMPLE_SIZE = 64 << 10;
+
+    private final long contentLength;
+    //header followed by the mapped chunks of the file, or its deflated copy, in response order
+    private final ByteBuffer[] parts;
+    private final boolean deflated;
+
+    private FileResponse(long contentLength, ByteBuffer[] parts, boolean deflated) {
+        this.contentLength = contentLength;
+        this.parts = parts;
+        this.deflated = deflated;
+    }
+
+    /** notFound
+     * Builds the response for a file that does not exist or cannot be read, which has a header and
+     * no body, so the client can tell it apart from any file whatever its content
+     *
+     * @return the 404 response, ready to segment
+     */
+    static FileResponse notFound() {
+        String HTTP_HeaderForm = "HTTP/1.0 404 Not Found\r\n"
+                + "Content-Length: 0\r\n"
+                + "\r\n";
+        return new FileResponse(0, new ByteBuffer[]{ByteBuffer.wrap(HTTP_HeaderForm.getBytes(StandardCharsets.US_ASCII))},
+                false);
+    }
+
+    /** open
+     * Maps the file and builds the header given by the Lab document
+     *
+     * @param fileName: file requested by the client
+     * @return the response, ready to segment
+     * @throws IOException if the file cannot be opened
+     */
+    static FileResponse open(String fileName) throws IOException {
+        return open(fileName, null);
+    }
+
+    /** open
+     * Maps the requested range of the file and builds the matching header
+     *
+     * @param fileName: file requested by the client
+     * @param range: value of the request's Range header, or null for the whole file
+     * @return the response, ready to segment
+     * @throws IOException if the file cannot be opened
+     */
+    static FileResponse open(String fileName, String range) throws IOException {
+        return open(fileName, range, false);
+    }
+
+    /** open
+     * Maps the requested range of the file, deflating the whole file when the client accepts it and
+     * it is worth it, and builds the matching header
+     *
+     * @param fileName: file requested by the client
+     * @param range: value of the request's Range header, or null for the whole file
+     * @param acceptsDeflate: true if the request carried "Accept-Encoding: deflate"
+     * @return the response, ready to segment
+     * @throws IOException if the file cannot be opened
+     */
+    static FileResponse open(String fileName, String range, boolean acceptsDeflate) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = file.size();    //Content-Length comes from the file metadata
+            long[] bytes = range == null ? null : parseRange(range, size);
+            if (bytes == null && acceptsDeflate && size >= MIN_DEFLATE_SIZE && size <= MAX_DEFLATE_SIZE) {
+                ByteBuffer body = deflate(file.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                if (body != null) {
+                    String HTTP_HeaderForm = "HTTP/1.0 200 Document Follows\r\n"
+                            + "Content-Type: text/plain\r\n"
+                            + "Content-Encoding: " + DEFLATE + "\r\n"
+                            + "Content-Length: " + body.remaining() + "\r\n"
+                            + "\r\n";
+                    ByteBuffer header = ByteBuffer.wrap(HTTP_HeaderForm.getBytes(StandardCharsets.US_ASCII));
+                    return new FileResponse(body.remaining(), new ByteBuffer[]{header, body}, true);
+                }
+            }
+            String HTTP_HeaderForm;
+            long first = 0;
+            long length = size;
+            if (bytes == null) {
+                HTTP_HeaderForm = "HTTP/1.0 200 Document Follows\r\n"
+                        + "Content-Type: text/plain\r\n"
+                        + "Content-Length: " + size + "\r\n"
+                        + "\r\n";
+            } else if (bytes[0] >= size) {
+                HTTP_HeaderForm = "HTTP/1.0 416 Range Not Satisfiable\r\n"
+                        + "Content-Range: bytes */" + size + "\r\n"
+                        + "Content-Length: 0\r\n"
+                        + "\r\n";
+                length = 0;
+            } else {
+                first = bytes[0];
+                length = Math.min(bytes[1], size - 1) - first + 1;
+                HTTP_HeaderForm = "HTTP/1.0 206 Partial Content\r\n"
+                        + "Content-Type: text/plain\r\n"
+                        + "Content-Range: bytes " + first + "-" + (first + length - 1) + "/" + size + "\r\n"
+                        + "Content-Length: " + length + "\r\n"
+                        + "\r\n";
+            }
+
+            int chunks = (int) ((length + MAX_MAP_SIZE - 1) / MAX_MAP_SIZE);
+            ByteBuffer[] parts = new ByteBuffer[1 + chunks];
+            parts[0] = ByteBuffer.wrap(HTTP_HeaderForm.getBytes(StandardCharsets.US_ASCII));
+            for (int i = 0; i < chunks; i++) {
+                long offset = i * MAX_MAP_SIZE;
+                parts[1 + i] = file.map(FileChannel.MapMode.READ_ONLY, first + offset, Math.min(MAX_MAP_SIZE, length - offset));
+            }
+            //the mapping stays valid after the channel is closed
+            return new FileResponse(length, parts, false);
+        }
+    }
+
+    /** deflate
+     * Deflates a body unless a sample of its start, or the whole body, does not shrink enough
+     *
+     * @param body: bytes to deflate; its position is left unchanged
+     * @return the deflated body, or null to send the body as it is
+     */
+    static ByteBuffer deflate(ByteBuffer body) {
+        Deflater deflater = new Deflater();
+        try {
+            int limit = (int) (body.remaining() * MAX_DEFLATE_RATIO);
+            if (body.remaining() > DEFLATE_SAMPLE_SIZE) {
+                ByteBuffer sample = body.duplicate();
+                sample.limit(sample.position() + DEFLATE_SAMPLE_SIZE);
+                if (deflate(deflater, sample, (int) (DEFLATE_SAMPLE_SIZE * MAX_DEFLATE_RATIO)) == null)
+                    return null;    //already compressed, most likely
+                deflater.reset();
+            }
+            return deflate(deflater, body.duplicate(), limit);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    //Deflates input, giving up once the output passes limit bytes
+    private static ByteBuffer deflate(Deflater deflater, ByteBuffer input, int limit) {
+        byte[] output = new byte[Math.min(limit, Math.max(input.remaining() / 4, 4096))];
+        int length = 0;
+        deflater.setInput(input);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (length == output.length) {
+                if (length >= limit)
+                    return null;
+                output = Arrays.copyOf(output, (int) Math.min(limit, 2L * length));
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /** parseRange
+     * Reads a single "bytes=first-last", "bytes=first-" or "bytes=-suffixLength" range, or a
+     * "stripe=i/n" part of the file
+     *
+     * @param range: Range header value
+     * @param size: file size, which suffix ranges count back from
+     * @return {first, last} with last possibly past the end of the file, or null if the header is not
+     * a single byte range
+     */
+    static long[] parseRange(String range, long size) {
+        if (range.regionMatches(true, 0, STRIPE_UNIT, 0, STRIPE_UNIT.length()))
+            return parseStripe(range.substring(STRIPE_UNIT.length()).trim(), size);
+        if (!range.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length()) || range.indexOf(',') >= 0)
+            return null;
+        String spec = range.substring(BYTES_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+            return null;
+        try {
+            String firstText = spec.substring(0, dash).trim();
+            String lastText = spec.substring(dash + 1).trim();
+            if (firstText.isEmpty()) {  //suffix range, the last N bytes
+                long suffix = Long.parseLong(lastText);
+                return suffix <= 0 ? null : new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            long first = Long.parseLong(firstText);
+            long last = lastText.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastText);
+            return first < 0 || last < first ? null : new long[]{first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    //The i-th of n equal parts of the file; an empty part is unsatisfiable
+    private static long[] parseStripe(String stripe, long size) {
+        int slash = stripe.indexOf('/');
+        if (slash < 0)
+            return null;
+        try {
+            long index = Long.parseLong(stripe.substring(0, slash).trim());
+            long count = Long.parseLong(stripe.substring(slash + 1).trim());
+            if (count < 1 || index < 0 || index >= count)
+                return null;
+            long first = size / count * index + Math.min(index, size % count);    //earlier parts take the remainder
+            long length = size / count + (index < size % count ? 1 : 0);
+            return length == 0 ? new long[]{size, size} : new long[]{first, first + length - 1};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** getContentLength
+     * @return size of the response body in bytes, the range length for a partial response
+     */
+    long getContentLength() {
+        return contentLength;
+    }
+
+    /** isDeflated
+     * @return true if the body is sent deflated, with a "Content-Encoding: deflate" header
+     */
+    boolean isDeflated() {
+        return deflated;
+    }
+
+    /** getParts
+     * @return header and body buffers in the order they are sent; callers must not move their positions
+     */
+    ByteBuffer[] getParts() {
+        return parts;
+    }
+}
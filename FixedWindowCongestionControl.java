@@ -0,0 +1,41 @@
+/** FixedWindowCongestionControl Class
+ * Keeps the whole window open regardless of loss, which is how the sender behaved before
+ * congestion control was added. Useful as a baseline and on a dedicated link.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class FixedWindowCongestionControl implements CongestionControl {
+
+    private final int window;
+
+    /** FixedWindowCongestionControl
+     *
+     * @param window: segments allowed in flight
+     */
+    FixedWindowCongestionControl(int window) {
+        this.window = window;
+    }
+
+    @Override
+    public int getWindow() {
+        return window;
+    }
+
+    @Override
+    public void onAck(int acknowledged, RttEstimator rtt, long now) {
+    }
+
+    @Override
+    public void onLoss(long now) {
+    }
+
+    @Override
+    public void onTimeout(long now) {
+    }
+
+    @Override
+    public String getName() {
+        return "none";
+    }
+}
@@ -0,0 +1,102 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** InternetChecksum Class
+ * 16 bit one's complement checksum used in every packet header. Gives exactly the same value as
+ * the original two-bytes-per-step Packet.CheckSum, but reads 8 bytes per step and folds the
+ * carries once at the end instead of testing for a carry after every addition.
+ *
+ * Sums can be built up over several pieces with partial() and finished with finish(); every piece
+ * except the last must have an even length so the 16 bit words stay aligned.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+final class InternetChecksum {
+
+    //reads big endian longs straight out of a byte array without bounds checks per byte
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private InternetChecksum() {
+    }
+
+    /** checkSum
+     * @param packetBytes: bytes to sum
+     * @param offset: first byte
+     * @param length: number of bytes
+     * @return inverted 16 bit one's complement sum, identical to the original Packet.CheckSum
+     */
+    static short checkSum(byte[] packetBytes, int offset, int length) {
+        return finish(partial(0, packetBytes, offset, length));
+    }
+
+    /** checkSum
+     * @param buffer: bytes between position and limit are summed; the position is not moved
+     * @return inverted 16 bit one's complement sum
+     */
+    static short checkSum(ByteBuffer buffer) {
+        return finish(partial(0, buffer));
+    }
+
+    /** partial
+     * Adds bytes to a running sum. The returned value is unfolded and only meaningful to partial()/finish().
+     *
+     * @param sum: running sum, 0 to start
+     * @param packetBytes: bytes to add
+     * @param offset: first byte
+     * @param length: number of bytes, must be even unless this is the last piece
+     * @return new running sum
+     */
+    static long partial(long sum, byte[] packetBytes, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        //two 32 bit big endian halves per step; 2^32 = 1 (mod 0xFFFF) so they add like pairs of 16 bit words.
+        //Each step adds under 2^33, so the long cannot overflow for any array length.
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            long word = (long) LONG_BE.get(packetBytes, i);
+            sum += (word >>> 32) + (word & 0xFFFFFFFFL);
+        }
+        for (; i + 1 < end; i += 2)
+            sum += ((packetBytes[i] & 0xFF) << 8) | (packetBytes[i + 1] & 0xFF);
+        if (i < end)    //odd byte is padded with a zero low byte
+            sum += (packetBytes[i] & 0xFF) << 8;
+        return sum;
+    }
+
+    /** partial
+     * @param sum: running sum, 0 to start
+     * @param buffer: bytes between position and limit are added; the position is not moved
+     * @return new running sum
+     */
+    static long partial(long sum, ByteBuffer buffer) {
+        if (buffer.hasArray())
+            return partial(sum, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int end = buffer.limit();
+        int i = buffer.position();
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            long word = bigEndian ? buffer.getLong(i) : Long.reverseBytes(buffer.getLong(i));
+            sum += (word >>> 32) + (word & 0xFFFFFFFFL);
+        }
+        for (; i + 1 < end; i += 2)
+            sum += ((buffer.get(i) & 0xFF) << 8) | (buffer.get(i + 1) & 0xFF);
+        if (i < end)
+            sum += (buffer.get(i) & 0xFF) << 8;
+        return sum;
+    }
+
+    /** finish
+     * Folds the carries of a running sum into 16 bits and inverts it
+     *
+     * @param sum: running sum from partial()
+     * @return the checksum
+     */
+    static short finish(long sum) {
+        while ((sum >>> 16) != 0)   //end around carry, at most a handful of rounds
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        //inverts the sum by getting the unary bitwise complement
+        return (short) (~sum & 0xFFFF);
+    }
+}
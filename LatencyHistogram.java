@@ -0,0 +1,120 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** LatencyHistogram Class
+ * Lock free histogram of durations in nanoseconds, laid out like HdrHistogram: values below
+ * SUB_BUCKETS get a bucket each, and every power of two above that is split into SUB_BUCKETS / 2
+ * buckets, so any value is reported to within 1% using a fixed 29 KB of counters whatever the range.
+ * Recording is one atomic increment, so every session thread can record into the same histogram.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    //enough buckets for any non-negative long
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * HALF + HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** record
+     * @param nanos: duration to add; negative values are counted as 0
+     */
+    void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /** drain
+     * Moves every count into a new histogram, leaving this one empty; values recorded meanwhile land
+     * in one or the other, never in both or neither
+     *
+     * @return histogram of everything recorded since the last drain
+     */
+    LatencyHistogram drain() {
+        LatencyHistogram drained = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts.get(i) != 0)
+                drained.counts.set(i, counts.getAndSet(i, 0));
+        }
+        return drained;
+    }
+
+    /** getCount
+     * @return number of values recorded
+     */
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+        return count;
+    }
+
+    /** getValueAtPercentile
+     * @param percentile: 0 to 100
+     * @return the value at or below which that percentage of recorded values fall, 0 if none were recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += snapshot[i] = counts.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return median(i);
+        }
+        return median(BUCKETS - 1);
+    }
+
+    /** getMax
+     * @return largest value recorded, to the histogram's precision, 0 if none were recorded
+     */
+    long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0)
+                return median(i);
+        }
+        return 0;
+    }
+
+    /** getMean
+     * @return mean of the recorded values, to the histogram's precision, 0 if none were recorded
+     */
+    double getMean() {
+        long count = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = counts.get(i);
+            count += bucketCount;
+            sum += (double) bucketCount * median(i);
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %.3f ms, p99 %.3f ms, max %.3f ms", getValueAtPercentile(50) / 1e6,
+                getValueAtPercentile(99) / 1e6, getMax() / 1e6);
+    }
+
+    //Values below SUB_BUCKETS map to themselves; above that the top SUB_BUCKET_BITS bits pick the bucket
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    //Middle of the range of values that fall in bucket
+    private static long median(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / HALF - 1;
+        long lowest = (long) (bucket % HALF + HALF) << shift;
+        return lowest + ((1L << shift) - 1) / 2;
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** LoadDriver Class
+ * Runs 1, 2, 4, ... maxClients concurrent GETs of the same file against a running UDPServer and
+ * prints the aggregate throughput for each client count, to check that transfers run in parallel.
+ * A transfer the server stops sending for SERVER_IDLE_TIMEOUT_MS is counted as failed rather than
+ * waited on forever, and the FIN that follows the last ACK ends a transfer like it does in UDPClient.
+ * Run using java LoadDriver [host] [port] [fileName] [maxClients] [gbn|sr] [windowSize] [packetSize]
+ *                           [congestionControl]
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public class LoadDriver {
+
+    public static void main(String args[]) throws Exception {
+        InetAddress host = InetAddress.getByName(args.length > 0 ? args[0] : "127.0.0.1");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 10028;
+        String fileName = args.length > 2 ? args[2] : "TestFile.html";
+        int maxClients = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        ArqMode mode = args.length > 4 ? ArqMode.parse(args[4]) : ArqMode.SELECTIVE_REPEAT;
+        int windowSize = args.length > 5 ? Integer.parseInt(args[5]) : SlidingWindowSender.DEFAULT_WINDOW_SIZE;
+        int packetSize = args.length > 6 ? Integer.parseInt(args[6]) : Packet.DEFAULT_PACKET_SIZE;
+        String congestion = args.length > 7 ? args[7] : CongestionControl.DEFAULT_NAME;
+
+        fetch(host, port, fileName, mode, windowSize, packetSize, congestion);  //warm up the server and the JIT
+
+        System.out.printf("%8s %12s %12s %12s %8s%n", "clients", "bytes", "seconds", "MB/s", "failed");
+        for (int clients = 1; clients <= maxClients; clients *= 2) {
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            List<Future<Long>> transfers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++)
+                transfers.add(pool.submit(() -> fetch(host, port, fileName, mode, windowSize, packetSize, congestion)));
+            long bytes = 0;
+            int failed = 0;
+            for (Future<Long> transfer : transfers) {
+                long received = transfer.get();
+                if (received < 0)
+                    failed++;
+                else
+                    bytes += received;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+            System.out.printf("%8d %12d %12.3f %12.2f %8d%n", clients, bytes, seconds, bytes / seconds / (1 << 20),
+                    failed);
+        }
+    }
+
+    /** fetch
+     * Performs one complete GET and acknowledges every segment, like UDPClient without the Gremlin
+     *
+     * @param host: server address
+     * @param port: server request port
+     * @param fileName: file to request
+     * @param mode: Go-Back-N or Selective Repeat
+     * @param windowSize: receive window
+     * @param packetSize: datagram size to ask the server for
+     * @param congestion: congestion control to ask the server for
+     * @return number of payload bytes received, or -1 if the server went quiet before the transfer completed
+     */
+    private static long fetch(InetAddress host, int port, String fileName, ArqMode mode, int windowSize,
+                              int packetSize, String congestion) throws Exception {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setReceiveBufferSize(Math.max(socket.getReceiveBufferSize(), windowSize * packetSize));
+            socket.setSoTimeout((int) UDPClient.SERVER_IDLE_TIMEOUT_MS);   //the server abandons a session by then
+            byte[] request = ("GET " + fileName + " HTTP/1.0\r\n"
+                    + "ARQ: " + mode.getHeaderName() + "\r\n"
+                    + "Window: " + windowSize + "\r\n"
+                    + "Packet-Size: " + packetSize + "\r\n"
+                    + "Congestion: " + congestion + "\r\n"
+                    + "\r\n").getBytes();
+            socket.send(new DatagramPacket(request, request.length, host, port));
+
+            SlidingWindowReceiver receiver = new SlidingWindowReceiver(mode, windowSize,
+                    Channels.newChannel(OutputStream.nullOutputStream()));
+            try {
+                while (true) {
+                    Packet received;
+                    try {
+                        received = Packet.receive(socket, packetSize);
+                    } catch (SocketTimeoutException e) {
+                        //everything arrived and only the FIN was lost, or the server abandoned the session
+                        return receiver.isComplete() ? receiver.getBytesReceived() : -1;
+                    }
+                    InetAddress session = received.getAddress();
+                    int sessionPort = received.getPort();
+                    if (received.getType() == Packet.TYPE_FIN && received.isCheckSumValid()) {
+                        Packet finAck = Packet.createControl(Packet.TYPE_FIN_ACK, received.getSegmentNumber(), 0);
+                        socket.send(finAck.getDatagramPacket(session, sessionPort));
+                        finAck.release();
+                        received.release();
+                        return receiver.isComplete() ? receiver.getBytesReceived() : -1;
+                    }
+                    if (received.getType() != Packet.TYPE_DATA) {
+                        received.release();
+                        continue;
+                    }
+                    Packet reply = received.isCheckSumValid() ? receiver.onData(received) : receiver.onCorrupt(received);
+                    if (reply != null) {
+                        socket.send(reply.getDatagramPacket(session, sessionPort));
+                        reply.release();
+                    }
+                    if (receiver.isComplete())  //keep answering retransmissions until the FIN, but not for long
+                        socket.setSoTimeout((int) UDPClient.LINGER_MS);
+                }
+            } finally {
+                receiver.close();
+            }
+        }
+    }
+}
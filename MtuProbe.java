@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketOption;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/** MtuProbe Class
+ * Finds the largest datagram that makes the round trip between client and server, so the client can
+ * ask for the biggest packet size the path allows. The client sends "PROBE <size> HTTP/1.0" padded
+ * with zeros to size bytes, and the server answers with "PROBE-ACK <size>" padded to the same size,
+ * so both directions of the path are tested. A size is given up on after PROBE_ATTEMPTS timeouts
+ * and the search narrows by binary search between MIN_PACKET_SIZE and MAX_PACKET_SIZE.
+ *
+ * Oversized datagrams are normally fragmented by IP rather than dropped, so the probe asks for the
+ * don't fragment bit where the JDK offers it (jdk.net.ExtendedSocketOptions.IP_DONTFRAGMENT, Java 19+).
+ * Without it a fragmented probe comes back just as well, so on older JDKs the search is capped at
+ * ETHERNET_PACKET_SIZE unless the server is on loopback, where datagrams are never fragmented.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+final class MtuProbe {
+
+    static final String METHOD = "PROBE";
+    static final String REPLY = "PROBE-ACK";
+    static final int PROBE_TIMEOUT_MS = 250;    //how long to wait for each probe to come back
+    static final int PROBE_ATTEMPTS = 2;        //timeouts before a size is taken as too big
+
+    private MtuProbe() {
+    }
+
+    /** discover
+     * Binary searches for the largest packet size that reaches the server and comes back, up to
+     * MAX_PACKET_SIZE when the don't fragment bit is set or the server is on loopback and up to
+     * ETHERNET_PACKET_SIZE otherwise. Any receive timeout set on the socket is restored afterwards.
+     *
+     * @param socket: client socket, later used for the transfer
+     * @param IPAddress: IP Address of Server
+     * @param port: Port of Server
+     * @return largest working packet size, or Packet.DEFAULT_PACKET_SIZE if no probe came back
+     */
+    static int discover(DatagramSocket socket, InetAddress IPAddress, int port) throws IOException {
+        boolean dontFragment = setDontFragment(socket, true);
+        int oldTimeout = socket.getSoTimeout();
+        byte[] replyData = new byte[Packet.MAX_PACKET_SIZE];
+        try {
+            socket.setSoTimeout(PROBE_TIMEOUT_MS);
+            //without the don't fragment bit every size up to MAX_PACKET_SIZE would come back fragmented
+            int ceiling = dontFragment || IPAddress.isLoopbackAddress() ? Packet.MAX_PACKET_SIZE
+                    : Packet.ETHERNET_PACKET_SIZE;
+            if (probe(socket, IPAddress, port, ceiling, replyData))
+                return ceiling;     //loopback, jumbo and plain Ethernet paths need no search
+            if (!probe(socket, IPAddress, port, Packet.MIN_PACKET_SIZE, replyData))
+                return Packet.DEFAULT_PACKET_SIZE;  //server does not answer probes
+            int good = Packet.MIN_PACKET_SIZE;
+            int bad = ceiling;
+            while (bad - good > 1) {
+                int size = (good + bad) >>> 1;
+                if (probe(socket, IPAddress, port, size, replyData))
+                    good = size;
+                else
+                    bad = size;
+            }
+            return good;
+        } finally {
+            socket.setSoTimeout(oldTimeout);
+            if (dontFragment)
+                setDontFragment(socket, false);
+        }
+    }
+
+    /** encodeReply
+     * Builds the server's answer to a probe, padded to the length the probe arrived with
+     *
+     * @param probeLength: length of the received probe datagram
+     * @return reply bytes
+     */
+    static byte[] encodeReply(int probeLength) {
+        return pad(REPLY + " " + probeLength + "\r\n\r\n", probeLength);
+    }
+
+    //Sends one probe size until it comes back or the attempts run out
+    private static boolean probe(DatagramSocket socket, InetAddress IPAddress, int port, int size, byte[] replyData)
+            throws IOException {
+        byte[] probeData = pad(METHOD + " " + size + " HTTP/1.0\r\n\r\n", size);
+        String expected = REPLY + " " + size + "\r\n";
+        DatagramPacket reply = new DatagramPacket(replyData, replyData.length);
+        for (int attempt = 0; attempt < PROBE_ATTEMPTS; attempt++) {
+            try {
+                socket.send(new DatagramPacket(probeData, probeData.length, IPAddress, port));
+            } catch (IOException e) {   //EMSGSIZE when the local interface already knows the size is too big
+                return false;
+            }
+            try {
+                while (true) {  //skip late replies to earlier, larger probes
+                    reply.setLength(replyData.length);
+                    socket.receive(reply);
+                    if (reply.getLength() == size && reply.getLength() >= expected.length()
+                            && new String(replyData, 0, expected.length(), StandardCharsets.US_ASCII).equals(expected))
+                        return true;
+                }
+            } catch (SocketTimeoutException e) {
+                //lost or dropped, try again
+            }
+        }
+        return false;
+    }
+
+    //Text followed by zeros up to size bytes
+    private static byte[] pad(String text, int size) {
+        byte[] data = new byte[Math.max(size, text.length())];
+        byte[] textBytes = text.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(textBytes, 0, data, 0, textBytes.length);
+        return data;
+    }
+
+    //Sets IP_DONTFRAGMENT when this JDK has it; looked up by reflection so older JDKs still compile and run
+    @SuppressWarnings("unchecked")
+    private static boolean setDontFragment(DatagramSocket socket, boolean on) {
+        try {
+            Object option = Class.forName("jdk.net.ExtendedSocketOptions").getField("IP_DONTFRAGMENT").get(null);
+            socket.setOption((SocketOption<Boolean>) option, on);
+            return true;
+        } catch (ReflectiveOperationException | UnsupportedOperationException | IOException e) {
+            return false;
+        }
+    }
+}
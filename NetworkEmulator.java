@@ -0,0 +1,374 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** NetworkEmulator Class
+ * Local stand in for a real network path, for trying the congestion controllers without one.
+ * Clients send to the emulator instead of the server; each direction then goes through a link with
+ * an Impairment: random loss, a fixed one way delay plus jitter (in order), a bandwidth limit and a
+ * drop tail queue of queueSize packets, so a sender that ignores congestion overflows the queue just
+ * as it would at a router. A link can also reorder, duplicate and corrupt datagrams.
+ *
+ * Every client gets its own socket towards the server, so replies from a session go back to the
+ * client that started it and several clients can use the emulator at once. Requests (GET and
+ * PROBE) are forwarded to the server's request port and everything else to the session port the
+ * server last answered that client from. Requests are never corrupted, since they carry no checksum
+ * for the server to catch it with.
+ * Run using java NetworkEmulator [listenPort] [serverHost] [serverPort] [lossRate] [delayMs] [jitterMs]
+ *                                [bandwidthKBps] [queueSize] [seed] [reorderRate] [duplicateRate] [corruptRate]
+ *
+ * The emulator can also be embedded, for example by a benchmark: construct it, start() it, point
+ * clients at getPort() and close() it when done.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public class NetworkEmulator implements Closeable {
+
+    private static final String[] REQUEST_METHODS = {"GET ", MtuProbe.METHOD + " "};
+    //a client's socket towards the server is closed after this long without traffic either way
+    static final long FLOW_IDLE_TIMEOUT_MS = 10_000;
+
+    private final DatagramSocket clientSide;
+    private final SocketAddress serverRequests;
+    private final Link upstream;
+    private final Link downstream;
+    private final Map<SocketAddress, Flow> flows = new ConcurrentHashMap<>();
+    private final Thread requests;
+    private volatile boolean closed;
+
+    /** NetworkEmulator
+     *
+     * @param listenPort: port clients send to, 0 for any free port
+     * @param server: the server's request address
+     * @param upstreamImpairment: what happens to datagrams from clients to the server
+     * @param downstreamImpairment: what happens to datagrams from the server to clients
+     * @param seed: seed for the random choices, so runs can be repeated
+     * @throws IOException if the port cannot be bound
+     */
+    NetworkEmulator(int listenPort, SocketAddress server, Impairment upstreamImpairment, Impairment downstreamImpairment,
+                    long seed) throws IOException {
+        clientSide = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), listenPort));
+        serverRequests = server;
+        upstream = new Link("client->server", upstreamImpairment, seed);
+        downstream = new Link("server->client", downstreamImpairment, seed + 1);
+        requests = new Thread(this::receiveFromClients, "emulator-" + clientSide.getLocalPort());
+        requests.setDaemon(true);
+    }
+
+    public static void main(String args[]) throws Exception {
+        int listenPort = args.length > 0 ? Integer.parseInt(args[0]) : 10031;
+        InetAddress serverHost = InetAddress.getByName(args.length > 1 ? args[1] : "127.0.0.1");
+        int serverPort = args.length > 2 ? Integer.parseInt(args[2]) : 10028;
+        double lossRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.0;
+        long delayMs = args.length > 4 ? Long.parseLong(args[4]) : 10;
+        long jitterMs = args.length > 5 ? Long.parseLong(args[5]) : 0;
+        long bandwidthKBps = args.length > 6 ? Long.parseLong(args[6]) : 10_000;
+        int queueSize = args.length > 7 ? Integer.parseInt(args[7]) : 64;
+        long seed = args.length > 8 ? Long.parseLong(args[8]) : 4320;
+        double reorderRate = args.length > 9 ? Double.parseDouble(args[9]) : 0.0;
+        double duplicateRate = args.length > 10 ? Double.parseDouble(args[10]) : 0.0;
+        double corruptRate = args.length > 11 ? Double.parseDouble(args[11]) : 0.0;
+
+        Impairment impairment = new Impairment(lossRate, delayMs, jitterMs, bandwidthKBps, queueSize, reorderRate,
+                duplicateRate, corruptRate);
+        NetworkEmulator emulator = new NetworkEmulator(listenPort, new InetSocketAddress(serverHost, serverPort),
+                impairment, impairment, seed);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(emulator)));
+        emulator.start();
+        System.out.println("Emulating " + impairment + " on port " + emulator.getPort());
+        emulator.requests.join();
+    }
+
+    /** start
+     * Starts forwarding on background threads
+     */
+    void start() {
+        upstream.start();
+        downstream.start();
+        requests.start();
+    }
+
+    /** getPort
+     * @return the port clients send to
+     */
+    int getPort() {
+        return clientSide.getLocalPort();
+    }
+
+    /** close
+     * Stops forwarding and closes every socket; datagrams still on a link are dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        clientSide.close();
+        for (Flow flow : flows.values()) flow.serverSide.close();
+        upstream.interrupt();
+        downstream.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return upstream + "\n" + downstream;
+    }
+
+    //Forwards everything clients send, starting a flow for each new client
+    private void receiveFromClients() {
+        byte[] buffer = new byte[Packet.MAX_PACKET_SIZE];
+        DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+        try {
+            while (!closed) {
+                datagram.setLength(buffer.length);
+                clientSide.receive(datagram);
+                SocketAddress client = datagram.getSocketAddress();
+                Flow flow = flows.get(client);
+                if (flow == null || flow.serverSide.isClosed()) {
+                    flow = new Flow(client);
+                    flows.put(client, flow);
+                    flow.start();
+                }
+                flow.lastActive = System.nanoTime();
+                boolean request = isRequest(datagram);
+                upstream.offer(datagram, request ? serverRequests : flow.session, flow.serverSide, request);
+            }
+        } catch (IOException e) {
+            if (!closed)
+                System.out.println("Client side stopped: " + e);
+        }
+    }
+
+    //True for a GET or PROBE, which go to the request port rather than a session
+    private static boolean isRequest(DatagramPacket datagram) {
+        String start = new String(datagram.getData(), datagram.getOffset(), Math.min(datagram.getLength(), 8),
+                StandardCharsets.US_ASCII);
+        for (String method : REQUEST_METHODS) {
+            if (start.startsWith(method))
+                return true;
+        }
+        return false;
+    }
+
+    /** Impairment Class
+     * What one direction of the emulated path does to the datagrams crossing it
+     */
+    static class Impairment {
+        final double lossRate;
+        final long delayMs;
+        final long jitterMs;
+        final long bandwidthKBps;
+        final int queueSize;
+        final double reorderRate;       //held back so that later datagrams overtake it
+        final double duplicateRate;     //delivered twice
+        final double corruptRate;       //one bit of the datagram flipped, which the packet checksum catches
+
+        /** Impairment
+         *
+         * @param lossRate: probability a datagram is dropped
+         * @param delayMs: one way propagation delay
+         * @param jitterMs: the delay varies by up to this much either way, without reordering
+         * @param bandwidthKBps: link speed
+         * @param queueSize: packets the link can queue before it drops
+         * @param reorderRate: probability a datagram is held back REORDER_MS behind the ones after it
+         * @param duplicateRate: probability a datagram is delivered twice
+         * @param corruptRate: probability one bit of a datagram, header or data, is flipped
+         */
+        Impairment(double lossRate, long delayMs, long jitterMs, long bandwidthKBps, int queueSize, double reorderRate,
+                   double duplicateRate, double corruptRate) {
+            this.lossRate = lossRate;
+            this.delayMs = delayMs;
+            this.jitterMs = jitterMs;
+            this.bandwidthKBps = bandwidthKBps;
+            this.queueSize = queueSize;
+            this.reorderRate = reorderRate;
+            this.duplicateRate = duplicateRate;
+            this.corruptRate = corruptRate;
+        }
+
+        @Override
+        public String toString() {
+            return lossRate + " loss, " + delayMs + " +/- " + jitterMs + " ms delay, " + bandwidthKBps + " KB/s, "
+                    + queueSize + " packet queue, " + reorderRate + " reorder, " + duplicateRate + " duplicate, "
+                    + corruptRate + " corrupt";
+        }
+    }
+
+    /** Flow Class
+     * One client's socket towards the server, and the thread that hands the server's replies on
+     * that socket back to the client
+     */
+    private class Flow extends Thread {
+        final SocketAddress client;
+        final DatagramSocket serverSide;
+        volatile SocketAddress session = serverRequests;    //where the server last answered from
+        volatile long lastActive = System.nanoTime();
+
+        Flow(SocketAddress client) throws IOException {
+            super("flow-" + client);
+            setDaemon(true);
+            this.client = client;
+            this.serverSide = new DatagramSocket();
+            serverSide.setSoTimeout(1000);     //so an idle flow notices it can close
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[Packet.MAX_PACKET_SIZE];
+            DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+            try {
+                while (!closed) {
+                    datagram.setLength(buffer.length);
+                    try {
+                        serverSide.receive(datagram);
+                    } catch (SocketTimeoutException e) {
+                        if (System.nanoTime() - lastActive > FLOW_IDLE_TIMEOUT_MS * 1_000_000L)
+                            break;
+                        continue;
+                    }
+                    session = datagram.getSocketAddress();
+                    lastActive = System.nanoTime();
+                    downstream.offer(datagram, client, clientSide, false);
+                }
+            } catch (IOException e) {
+                if (!closed && !serverSide.isClosed())
+                    System.out.println(getName() + " stopped: " + e);
+            } finally {
+                flows.remove(client, this);
+                serverSide.close();
+            }
+        }
+    }
+
+    /** Link Class
+     * One direction of the emulated path. Datagrams wait in a DelayQueue until their departure time,
+     * which accounts for the time to serialise everything queued ahead of them at the link's
+     * bandwidth plus the propagation delay.
+     */
+    private static class Link extends Thread {
+        static final long REORDER_MS = 2;   //long enough on loopback for several datagrams to overtake
+
+        private final Impairment impairment;
+        private final long delayNanos;
+        private final long jitterNanos;
+        private final double nanosPerByte;
+        private final long maxQueueNanos;   //a full queue holds this much sending time
+        private final Random random;
+        private final DelayQueue<Delayed> queue = new DelayQueue<>();
+        private long linkFreeAt;            //when the link finishes sending what is queued
+        private long lastDepartAt;          //jitter varies the delay but never reorders a link
+        private final AtomicLong forwarded = new AtomicLong();
+        private final AtomicLong lost = new AtomicLong();
+        private final AtomicLong queueDrops = new AtomicLong();
+        private final AtomicLong reordered = new AtomicLong();
+        private final AtomicLong duplicated = new AtomicLong();
+        private final AtomicLong corrupted = new AtomicLong();
+
+        Link(String name, Impairment impairment, long seed) {
+            super(name);
+            setDaemon(true);
+            this.impairment = impairment;
+            this.delayNanos = impairment.delayMs * 1_000_000L;
+            this.jitterNanos = impairment.jitterMs * 1_000_000L;
+            this.nanosPerByte = 1e9 / (impairment.bandwidthKBps * 1024.0);
+            this.maxQueueNanos = (long) (impairment.queueSize * Packet.ETHERNET_PACKET_SIZE * nanosPerByte);
+            this.random = new Random(seed);
+        }
+
+        //Copies a datagram onto the link, or drops it for random loss or a full queue. A request is
+        //never corrupted.
+        synchronized void offer(DatagramPacket datagram, SocketAddress destination, DatagramSocket out, boolean request) {
+            if (random.nextDouble() < impairment.lossRate) {
+                lost.incrementAndGet();
+                return;
+            }
+            long now = System.nanoTime();
+            if (linkFreeAt - now > maxQueueNanos) {
+                queueDrops.incrementAndGet();
+                return;
+            }
+            linkFreeAt = Math.max(linkFreeAt, now) + (long) (datagram.getLength() * nanosPerByte);
+            long jitter = jitterNanos > 0 ? (long) (random.nextDouble() * 2 * jitterNanos) - jitterNanos : 0;
+            byte[] copy = new byte[datagram.getLength()];
+            System.arraycopy(datagram.getData(), datagram.getOffset(), copy, 0, copy.length);
+            if (!request && copy.length > 0 && random.nextDouble() < impairment.corruptRate) {
+                //any bit, header included, as on a real link; the packet checksum covers both
+                int bit = random.nextInt(copy.length * Byte.SIZE);
+                copy[bit / Byte.SIZE] ^= (byte) (1 << bit % Byte.SIZE);
+                corrupted.incrementAndGet();
+            }
+            long departAt = Math.max(lastDepartAt, linkFreeAt + Math.max(0, delayNanos + jitter));
+            if (random.nextDouble() < impairment.reorderRate) {
+                departAt += REORDER_MS * 1_000_000L;   //later datagrams keep their times and overtake it
+                reordered.incrementAndGet();
+            } else {
+                lastDepartAt = departAt;
+            }
+            queue.put(new InFlight(new DatagramPacket(copy, copy.length, destination), out, departAt));
+            if (random.nextDouble() < impairment.duplicateRate) {
+                queue.put(new InFlight(new DatagramPacket(copy.clone(), copy.length, destination), out, departAt));
+                duplicated.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    InFlight next = (InFlight) queue.take();
+                    try {
+                        next.out.send(next.datagram);
+                        forwarded.incrementAndGet();
+                    } catch (IOException e) {
+                        lost.incrementAndGet();     //its flow was closed while it was on the link
+                    }
+                }
+            } catch (InterruptedException e) {
+                //the emulator was closed
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + forwarded + " forwarded, " + lost + " lost, " + queueDrops + " queue drops, "
+                    + reordered + " reordered, " + duplicated + " duplicated, " + corrupted + " corrupted";
+        }
+    }
+
+    /** InFlight Class
+     * Datagram waiting in a Link until its departure time
+     */
+    private static class InFlight implements Delayed {
+        final DatagramPacket datagram;
+        final DatagramSocket out;
+        final long departAt;
+
+        InFlight(DatagramPacket datagram, DatagramSocket out, long departAt) {
+            this.datagram = datagram;
+            this.out = out;
+            this.departAt = departAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(departAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(departAt, ((InFlight) other).departAt);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/** NioServerEngine Class
+ * Alternative server engine that drives every transfer from a single thread. One non-blocking
+ * DatagramChannel receives both GET requests and ACKs; sessions are looked up by client address.
+ * Each selector wakeup drains all pending datagrams and then sends up to SEND_BATCH segments per
+ * session, reusing two direct buffers so no buffer is allocated per packet. A response that is not
+ * cached takes long enough to read, segment, checksum and perhaps deflate that it would stall every
+ * other session, so each new session's response is built on a builder thread and handed back to the
+ * event loop once it is ready.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class NioServerEngine {
+
+    //most segments one session may send per wakeup, so a big window cannot starve other sessions
+    static final int SEND_BATCH = 64;
+    //a session that hears nothing from its client for this long is dropped
+    static final long SESSION_IDLE_TIMEOUT_MS = 5000;
+
+    private final UDPServer server;
+    private final ArqMode defaultMode;
+    private final int defaultWindowSize;
+    private final String defaultCongestion;
+    private final Semaphore sessionPermits;
+    private final Executor builders;
+
+    private final Map<SocketAddress, Session> sessions = new HashMap<>();
+    //clients whose response is being built, event loop only
+    private final Set<SocketAddress> building = new HashSet<>();
+    //sessions whose response is built, handed from the builder threads to the event loop
+    private final Queue<Session> built = new ConcurrentLinkedQueue<>();
+    //sized for the largest packet or probe a client may ask for
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(Packet.MAX_PACKET_SIZE);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(Packet.MAX_PACKET_SIZE);
+    private final byte[] requestBytes = new byte[Packet.MAX_PACKET_SIZE];
+    private Selector selector;
+    private DatagramChannel channel;
+    private SelectionKey channelKey;
+    private volatile boolean running;
+    private volatile boolean closed;
+
+    /** NioServerEngine
+     *
+     * @param server: server the engine belongs to, which builds the responses and keeps the metrics
+     * @param defaultMode: ARQ mode used when the request does not name one
+     * @param defaultWindowSize: window used when the request does not name one
+     * @param defaultCongestion: congestion control used when the request does not name one
+     * @param sessionPermits: limits the transfers running at once, shared with the engines of the other ports
+     * @param builders: runs the building of each new session's response, off the event loop
+     */
+    NioServerEngine(UDPServer server, ArqMode defaultMode, int defaultWindowSize, String defaultCongestion,
+                    Semaphore sessionPermits, Executor builders) {
+        this.server = server;
+        this.defaultMode = defaultMode;
+        this.defaultWindowSize = defaultWindowSize;
+        this.defaultCongestion = defaultCongestion;
+        this.sessionPermits = sessionPermits;
+        this.builders = builders;
+    }
+
+    /** bind
+     * Opens the channel the engine receives requests and ACKs on
+     *
+     * @param address: local address and port, port 0 for any free port
+     * @return the port bound
+     * @throws IOException if the address cannot be bound
+     */
+    int bind(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.bind(address);
+            channelKey = channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            selector.close();
+            throw e;
+        }
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /** run
+     * Event loop, returns once the engine is closed or the channel fails
+     */
+    void run() throws IOException {
+        running = true;
+        try {
+            System.out.println("NIO engine ready to Receive Transmission on port "
+                    + ((InetSocketAddress) channel.getLocalAddress()).getPort());
+
+            while (!closed) {
+                long wait = nextWakeup() - System.nanoTime();
+                if (wait > 0)
+                    selector.select(Math.max(1, wait / 1_000_000L));
+                else
+                    selector.selectNow();
+                selector.selectedKeys().clear();
+
+                receiveAll();
+                acceptBuilt();
+                sendAll();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /** close
+     * Stops the event loop, abandoning any transfers in progress
+     */
+    void close() {
+        closed = true;
+        if (running)
+            selector.wakeup();  //the event loop releases everything on its way out
+        else
+            release();
+    }
+
+    //Abandons every session and closes the channel
+    private void release() {
+        for (Session session : sessions.values()) {
+            session.sender.close();
+            sessionPermits.release();
+        }
+        sessions.clear();
+        closeBuilt();
+        try {
+            if (channel != null)
+                channel.close();
+            if (selector != null)
+                selector.close();
+        } catch (IOException e) {
+            System.out.println("Closing the engine failed: " + e.getMessage());
+        }
+    }
+
+    //Drains every datagram waiting on the channel
+    private void receiveAll() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress client = channel.receive(receiveBuffer);
+            if (client == null)
+                return;
+            receiveBuffer.flip();
+            Session session = sessions.get(client);
+            if (session != null && session.sender.isComplete()) {   //the FIN exchange is over, so this is a new request
+                retire(session);
+                sessions.remove(client);
+                session = null;
+            }
+            if (session != null)
+                onReply(session);
+            else if (!building.contains(client))    //otherwise a repeated GET for the response being built
+                onRequest(client);
+        }
+    }
+
+    //An ACK, NAK or FIN-ACK from a client with a session
+    private void onReply(Session session) {
+        if (receiveBuffer.remaining() < Packet.HEADER_SIZE)
+            return;
+        Packet reply = Packet.CreatePacket(receiveBuffer);
+        byte type = reply.getType();
+        if (type == Packet.TYPE_ACK || type == Packet.TYPE_NAK || type == Packet.TYPE_FIN_ACK) {
+            session.sender.onAck(reply);
+            session.lastHeard = System.nanoTime();
+        }
+        reply.release();
+    }
+
+    //A GET or PROBE from a client without a session
+    private void onRequest(SocketAddress client) {
+        int length = receiveBuffer.remaining();
+        receiveBuffer.get(requestBytes, 0, length);
+        List<Request> requests;
+        Request request;
+        ArqMode mode;
+        int windowSize;
+        CongestionControl congestionControl;
+        FecEncoder fec;
+        try {
+            requests = Request.parseAll(requestBytes, length);
+            request = requests.get(0);  //the first request carries the transfer settings
+            mode = request.getArqMode(defaultMode);
+            windowSize = request.getWindowSize(defaultWindowSize);
+            congestionControl = request.getCongestionControl(defaultCongestion, windowSize);
+            fec = request.getFecEncoder(request.getPacketSize(Packet.DEFAULT_PACKET_SIZE));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ignoring bad request: " + e.getMessage());
+            return;
+        }
+        if (request.isProbe()) {    //path MTU probe, echo its size back at the same size
+            try {
+                channel.send(ByteBuffer.wrap(MtuProbe.encodeReply(length)), client);
+            } catch (IOException e) {
+                System.out.println("Probe reply to " + client + " failed: " + e.getMessage());
+            }
+            return;
+        }
+        String requestKey = UDPServer.requestKey(client, request);
+        if (server.isEndedRequest(requestKey)) {
+            System.out.println("Ignoring a late repeat of a finished request from " + client);
+            return;
+        }
+        if (!sessionPermits.tryAcquire()) {
+            System.out.println("Server busy, dropping request from " + client);
+            return;
+        }
+        building.add(client);
+        try {
+            builders.execute(() -> build(client, requestKey, requests, mode, windowSize, congestionControl, fec));
+        } catch (RejectedExecutionException e) {    //the server is closing
+            building.remove(client);
+            sessionPermits.release();
+        }
+    }
+
+    /** build
+     * Builds the response for a new session on a builder thread and hands the session to the event loop
+     *
+     * @param client: address of the client
+     * @param requestKey: key of the request, from UDPServer.requestKey()
+     * @param requests: parsed GET requests, one or more pipelined
+     * @param mode: Go-Back-N or Selective Repeat
+     * @param windowSize: maximum number of unacknowledged segments in flight
+     * @param congestionControl: decides how much of the window may be used
+     * @param fec: parity encoder, or null for none
+     */
+    private void build(SocketAddress client, String requestKey, List<Request> requests, ArqMode mode, int windowSize,
+                       CongestionControl congestionControl, FecEncoder fec) {
+        SlidingWindowSender sender = null;
+        try {
+            sender = new SlidingWindowSender(server.buildResponse(requests), mode, windowSize,
+                    SlidingWindowSender.DEFAULT_RETRANSMIT_TIMEOUT_MS, congestionControl, fec, server.getMetrics());
+            System.out.println("Sending packets to " + client + " using " + mode + " with window " + windowSize
+                    + " and " + congestionControl.getName() + " congestion control");
+        } catch (RuntimeException e) {  //anything the request asked for that cannot be served must not stop the engine
+            System.out.println("Ignoring request from " + client + " that cannot be served: " + e);
+        }
+        built.add(new Session(client, requestKey, sender));   //a session without a sender only frees its place
+        if (closed)
+            closeBuilt();   //the event loop may already be gone
+        else
+            selector.wakeup();
+    }
+
+    //Starts the sessions whose responses are built
+    private void acceptBuilt() {
+        for (Session session; (session = built.poll()) != null; ) {
+            building.remove(session.client);
+            if (session.sender != null)
+                sessions.put(session.client, session);
+            else
+                sessionPermits.release();
+        }
+    }
+
+    //Abandons the sessions whose responses were built after the engine closed
+    private void closeBuilt() {
+        for (Session session; (session = built.poll()) != null; ) {
+            if (session.sender != null)
+                session.sender.close();
+            sessionPermits.release();
+        }
+    }
+
+    //Sends up to SEND_BATCH segments for every session and retires finished or idle sessions; a session
+    //whose client went quiet after everything was acknowledged still counts as complete
+    private void sendAll() throws IOException {
+        boolean blocked = false;
+        long now = System.nanoTime();
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            Session session = it.next();
+            if (session.sender.isComplete() || session.failed || now - session.lastHeard > SESSION_IDLE_TIMEOUT_MS * 1_000_000L) {
+                retire(session);
+                it.remove();
+                continue;
+            }
+            if (blocked)
+                continue;
+            if (session.pending != null) {
+                if (channel.send(session.pending, session.client) == 0) {  //socket send buffer is still full
+                    blocked = true;
+                    continue;
+                }
+                session.pending = null;
+            }
+            session.hasMore = true;
+            for (int sent = 0; sent < SEND_BATCH; sent++) {
+                Packet next;
+                try {
+                    next = session.sender.nextToSend(now);
+                } catch (UncheckedIOException e) {  //the file could not be read, drop the session on the next pass
+                    System.out.println("Transfer to " + session.client + " failed: " + e.getMessage());
+                    session.failed = true;
+                    break;
+                }
+                if (next == null) {
+                    session.hasMore = false;
+                    break;
+                }
+                sendBuffer.clear();
+                next.writeTo(sendBuffer);
+                sendBuffer.flip();
+                if (channel.send(sendBuffer, session.client) == 0) {   //socket send buffer is full
+                    //copy the datagram: the packet stays the sender's, which may hand it back to the pool
+                    //when an ACK for it arrives before the socket drains
+                    session.pending = ByteBuffer.allocate(sendBuffer.remaining()).put(sendBuffer).flip();
+                    blocked = true;
+                    break;
+                }
+            }
+        }
+        //wait for the socket to drain before sending more
+        channelKey.interestOps(blocked ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    //Ends a finished, failed or idle session; the caller removes it from the sessions
+    private void retire(Session session) {
+        System.out.println((session.sender.isDelivered() ? "Transfer complete to " : "Transfer abandoned to ")
+                + session.client + ", " + session.sender.getSegmentsSent() + " packets, "
+                + session.sender.getRetransmissions() + " retransmissions, " + UDPServer.describeSession(session.sender));
+        session.sender.close();
+        server.onTransferEnded(session.requestKey);
+        sessionPermits.release();
+    }
+
+    //Earliest retransmission deadline or idle timeout over all sessions. Sessions waiting on a full
+    //socket are woken by OP_WRITE instead.
+    private long nextWakeup() {
+        long wakeup = System.nanoTime() + SESSION_IDLE_TIMEOUT_MS * 1_000_000L;
+        for (Session session : sessions.values()) {
+            if (session.hasMore && (channelKey.interestOps() & SelectionKey.OP_WRITE) == 0)
+                return 0;
+            wakeup = Math.min(wakeup, session.sender.nextDeadline());
+            wakeup = Math.min(wakeup, session.lastHeard + SESSION_IDLE_TIMEOUT_MS * 1_000_000L);
+        }
+        return wakeup;
+    }
+
+    /** Session Class
+     * State of one transfer driven by the event loop
+     */
+    private static class Session {
+        final SocketAddress client;
+        final String requestKey;    //request the session answers, remembered once it ends; null without an id
+        final SlidingWindowSender sender;   //null when the response could not be built
+        ByteBuffer pending; //copy of the datagram the socket refused last time, sent first on the next wakeup
+        boolean hasMore;    //stopped at SEND_BATCH with more segments ready to go
+        boolean failed;     //the response source could not be read
+        long lastHeard = System.nanoTime();
+
+        Session(SocketAddress client, String requestKey, SlidingWindowSender sender) {
+            this.client = client;
+            this.requestKey = requestKey;
+            this.sender = sender;
+        }
+    }
+}
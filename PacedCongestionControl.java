@@ -0,0 +1,77 @@
+/** PacedCongestionControl Class
+ * Rate based pacer around another controller. Instead of letting a whole window leave back to
+ * back, segments are spaced at window / smoothed RTT (times PACING_GAIN so the window can still
+ * grow), which keeps bursts from overflowing the client's socket buffer or a router queue.
+ *
+ * Timers in the send loops have millisecond resolution, so up to MAX_BURST_NANOS of sending may
+ * be saved up and go out together after an idle period.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class PacedCongestionControl implements CongestionControl {
+
+    static final String SUFFIX = "-paced";
+    private static final double PACING_GAIN = 1.25;
+    private static final long MAX_BURST_NANOS = 1_000_000L;
+
+    private final CongestionControl window;
+    private long smoothedRtt = -1;
+    private long interval;      //nanoseconds between segments, 0 until the first RTT sample
+    private long nextSendTime = Long.MIN_VALUE;
+
+    /** PacedCongestionControl
+     *
+     * @param window: controller that decides the window being paced
+     */
+    PacedCongestionControl(CongestionControl window) {
+        this.window = window;
+    }
+
+    @Override
+    public int getWindow() {
+        return window.getWindow();
+    }
+
+    @Override
+    public void onAck(int acknowledged, RttEstimator rtt, long now) {
+        window.onAck(acknowledged, rtt, now);
+        smoothedRtt = rtt.getSmoothedRtt();
+        updateInterval();
+    }
+
+    @Override
+    public void onLoss(long now) {
+        window.onLoss(now);
+        updateInterval();
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        window.onTimeout(now);
+        updateInterval();
+        nextSendTime = Long.MIN_VALUE;  //the retransmission goes out at once
+    }
+
+    @Override
+    public void onSend(long now) {
+        if (interval > 0)
+            nextSendTime = Math.max(nextSendTime, now - MAX_BURST_NANOS) + interval;
+    }
+
+    @Override
+    public long getNextSendTime() {
+        return nextSendTime;
+    }
+
+    @Override
+    public String getName() {
+        return window.getName() + SUFFIX;
+    }
+
+    //Spreads the current window over one smoothed round trip
+    private void updateInterval() {
+        if (smoothedRtt > 0)
+            interval = (long) (smoothedRtt / (PACING_GAIN * window.getWindow()));
+    }
+}
@@ -1,14 +1,24 @@
+import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.zip.Checksum;
 
 /**
  * This class contains the methods used for packets including creating a packet, getting packet data,
- * getting/setting the packet header, getting/setting the packet segment number, segmentation, re-assembly,
- * and the check sum function
- * 
+ * getting/setting the packet header, getting/setting the packet segment number, segmentation,
+ * and the check sum function. Re-assembly is done by the Reassembler class
+ *
+ * A Packet is a flyweight over a single reusable buffer that holds exactly the bytes sent on the wire
+ * (header followed by data). Header fields are kept as primitives and packets are handed out from a
+ * pool, so encoding and decoding do not allocate once the pool is warm. Call release() when finished
+ * with a packet so it can be reused.
+ *
  * @author StephanieParrish, Jordan Sosnowski, and Marcus Woodard
  * @version 7/15/2018
  */
@@ -17,56 +27,121 @@ class Packet {
 
     ///////Package Header///////
     //Constant Variables
-    //Private constant to map segment number and checksum
-    private static final String HEADER_SEGMENT_NUMBER = "SegmentNumber";
-    private static final String HEADER_CHECKSUM = "CheckSum";
+    //Offsets of the header fields in the wire buffer
+    private static final int HEADER_SEGMENT_NUMBER = 0;
+    private static final int HEADER_CHECKSUM = 4;
+    private static final int HEADER_TYPE = 6;
+    private static final int HEADER_FLAGS = 7;
+    private static final int HEADER_STREAM = 8;
+    //Packet types carried in the header
+    static final byte TYPE_DATA = 0;   //segment of the response
+    static final byte TYPE_ACK = 1;    //cumulative ack of the next expected segment, data holds the selective ack bits
+    static final byte TYPE_NAK = 2;    //the named segment arrived damaged and should be resent
+    static final byte TYPE_PARITY = 3; //XOR parity over a block of segments starting at the segment number, see FecEncoder
+    static final byte TYPE_FIN = 4;    //every segment was acknowledged, the segment number is one past the last
+    static final byte TYPE_FIN_ACK = 5; //the client saw the FIN and is closing, echoes its segment number
+    //Header flags
+    static final byte FLAG_LAST = 1;   //set on the final segment of the transfer
+    static final byte FLAG_END_STREAM = 2; //set on the final segment of each response in a pipelined transfer
     //package data
-    private static int PACKET_SIZE = 256;  //Size of the packets to be sent
-    private static final int HEADER_LINES = 4;  //Number of header lines that go before the objects to be sent given in the lab assignment
-    private static final int PACKET_DATA_SIZE = PACKET_SIZE - HEADER_LINES; //Size of the data that is transmitted in the packet
-    private byte[] PackageData;
-    //Map data dictionary that maps the header string to strings
-    private Map<String, String> PacketHeader;
+    static final int DEFAULT_PACKET_SIZE = 256;  //Size of the packets to be sent unless the client asks for another
+    static final int MIN_PACKET_SIZE = 64;       //smallest packet size a client may ask for
+    static final int ETHERNET_PACKET_SIZE = 1472; //largest datagram that fits a standard 1500 byte Ethernet MTU
+    static final int MAX_PACKET_SIZE = 65507;    //largest IPv4 UDP payload, usable on loopback and jumbo paths
+    static final int HEADER_SIZE = 10; //Number of header bytes that go before the objects to be sent (segment, checksum, type, flags, stream)
+    static final int MAX_STREAM_ID = 0xFFFF; //stream ids are carried as an unsigned short
+    //most 64 bit selective ack words an ACK carries, as many as fit a default sized packet (1920 segments,
+    //more than the largest window)
+    static final int MAX_SELECTIVE_ACK_WORDS = (DEFAULT_PACKET_SIZE - HEADER_SIZE) / Long.BYTES;
+    //Maximum number of idle packets kept around for reuse in each size class, and bytes per size class
+    private static final int MAX_POOLED_PACKETS = 4096;
+    private static final int MAX_POOLED_BYTES = 16 << 20;
+    //Idle packets waiting to be reused, one pool per power of two buffer size from 2^8 to 2^16
+    private static final int MIN_SIZE_CLASS = 8;
+    private static final int MAX_SIZE_CLASS = 16;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final ArrayDeque<Packet>[] packetPools = new ArrayDeque[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+    static {
+        for (int i = 0; i < packetPools.length; i++) packetPools[i] = new ArrayDeque<>();
+    }
+
+    //Wire buffer (header + data), the ByteBuffer view over it, and the datagram that sends/receives it
+    private final byte[] packetBuffer;
+    private final ByteBuffer packetView;
+    private final DatagramPacket datagram;
+    private final int sizeClass;
+    //Most wire bytes (header + data) this packet may carry
+    private int packetSize;
+    //Typed header fields
+    private int segmentNumber;
+    private short checkSum;
+    private byte type;
+    private byte flags;
+    private int streamId;   //which response of a pipelined transfer the segment belongs to
+    //Number of data bytes after the header
+    private int packetDataSize;
 
     //Constructor
-    private Packet() {
-        //Initialize data array
-        PackageData = new byte[PACKET_SIZE];
-
-        //Initialize Map using HashMap
-        PacketHeader = new HashMap<>();
-    }
-
-    //Reassemble Packet function called by the UDPClient. Takes in the list of segmented packets and re-assembles them.
-    static byte[] ReassemblePacket(ArrayList<Packet> PacketList) {
-        int totalSize = 0;
-        //gets packet data size for each of the segmented packets
-        for (Packet aPacketList : PacketList) totalSize += aPacketList.getPacketDataSize();
-        //creates a byte that will contain the total size for the final returned packet
-        byte[] returnPacket = new byte[totalSize];
-        int returnCounter = 0;
-        for (int i = 0; i < PacketList.size(); i++) {
-            //Search the packetList for each packet
-            for (Packet FindPacket : PacketList) {
-            	//gets packet by segment number
-                String segmentNumber = FindPacket.getHeaderValue(HEADER_ELEMENTS.SEGMENT_NUMBER);
-                //gets the packet data size and data that match the segment number found
-                if (Integer.parseInt(segmentNumber) == i) {
-                    for (int k = 0; k < FindPacket.getPacketDataSize(); k++)
-                        returnPacket[returnCounter + k] = FindPacket.GETPacketData(k);
-                    returnCounter += FindPacket.getPacketDataSize();
-                    break;
-                }
-            }
+    private Packet(int sizeClass) {
+        //Initialize data array and the views over it
+        this.sizeClass = sizeClass;
+        packetBuffer = new byte[1 << sizeClass];
+        packetView = ByteBuffer.wrap(packetBuffer);
+        datagram = new DatagramPacket(packetBuffer, packetBuffer.length);
+    }
+
+    //Takes a default sized packet from the pool
+    static Packet acquire() {
+        return acquire(DEFAULT_PACKET_SIZE);
+    }
+
+    //Takes a packet that can carry packetSize wire bytes from the pool, or creates one if the pool is empty
+    static Packet acquire(int packetSize) {
+        if (packetSize < HEADER_SIZE || packetSize > MAX_PACKET_SIZE)
+            throw new IllegalArgumentException("ACQUIRE: bad packet size = " + packetSize);
+        int sizeClass = Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(packetSize - 1));
+        ArrayDeque<Packet> packetPool = packetPools[sizeClass - MIN_SIZE_CLASS];
+        Packet packet;
+        synchronized (packetPool) {
+            packet = packetPool.pollFirst();
         }
-        //returns the packet that has been re-assembled
-        return returnPacket;
+        if (packet == null)
+            packet = new Packet(sizeClass);
+        packet.packetSize = packetSize;
+        packet.segmentNumber = 0;
+        packet.checkSum = 0;
+        packet.type = TYPE_DATA;
+        packet.flags = 0;
+        packet.streamId = 0;
+        packet.packetDataSize = 0;
+        return packet;
+    }
+
+    //Returns this packet to the pool. The packet must not be used afterwards.
+    void release() {
+        ArrayDeque<Packet> packetPool = packetPools[sizeClass - MIN_SIZE_CLASS];
+        synchronized (packetPool) {
+            if (packetPool.size() < Math.min(MAX_POOLED_PACKETS, MAX_POOLED_BYTES >> sizeClass))
+                packetPool.addFirst(this);
+        }
+    }
+
+    //Returns every packet in the list to the pool and clears the list
+    static void release(List<Packet> PacketList) {
+        for (Packet aPacketList : PacketList) aPacketList.release();
+        PacketList.clear();
     }
 
     //Segmentation is called by the UDPServer to break the packets into segments
     static ArrayList<Packet> Segmentation(byte[] fileBytes) {
-    	//creates an empty array list for the newly segmented packets
-        ArrayList<Packet> returnPacket = new ArrayList<>();
+        //creates an empty array list for the newly segmented packets
+        ArrayList<Packet> returnPacket = new ArrayList<>(fileBytes.length / (DEFAULT_PACKET_SIZE - HEADER_SIZE) + 1);
+        Segmentation(fileBytes, returnPacket);
+        return returnPacket;
+    }
+
+    //Segments fileBytes into pooled packets appended to returnPacket, so a reused list allocates nothing
+    static void Segmentation(byte[] fileBytes, List<Packet> returnPacket) {
         //gets the fileBytes length
         int fileLength = fileBytes.length;
         //if the file has a length zero then throws an error saying the file is empty
@@ -75,34 +150,19 @@ class Packet {
         }
         int byteCounter = 0;
         int segmentNumber = 0;
-        //checks the fileLength against the byte counter. 
-        //As long as the byteCounter is less than the file length a new packet will be created of size 252
+        //checks the fileLength against the byte counter.
+        //As long as the byteCounter is less than the file length a new packet will be created of size 246
         while (byteCounter < fileLength) {
-            Packet nextPacket = new Packet();
-            byte[] nextPacketData = new byte[PACKET_DATA_SIZE];
-            //read in amount of data size 256 (total) - 4 (header) = 252 (data)
-            int readInDataSize = PACKET_DATA_SIZE; //only allows 252 bytes since the other 4 are for the header
-            //as long as the file length - the number of bytes counted is less than 252 
-            //then more data is added to the packet segment
-            if (fileLength - byteCounter < PACKET_DATA_SIZE) {
-                readInDataSize = fileLength - byteCounter;
-            }
-            //copy the file data
-            int j = byteCounter;
-            for (int i = 0; i < readInDataSize; i++) {
-                nextPacketData[i] = fileBytes[j];
-                j++;
-            }
-
-            //set the packet data for the next packet
-            nextPacket.setPacketData(nextPacketData);
+            Packet nextPacket = acquire();
+            //read in amount of data size 256 (total) - 10 (header) = 246 (data)
+            int readInDataSize = Math.min(nextPacket.getMaxDataSize(), fileLength - byteCounter);
 
-            //set the header for the next packet
-            nextPacket.setHeaderValue(HEADER_ELEMENTS.SEGMENT_NUMBER, segmentNumber + "");
+            //copy the file data straight into the wire buffer after the header
+            System.arraycopy(fileBytes, byteCounter, nextPacket.packetBuffer, HEADER_SIZE, readInDataSize);
+            nextPacket.packetDataSize = readInDataSize;
 
-            //CheckSum (errors)
-            String CheckSumPacket = String.valueOf(Packet.CheckSum(nextPacketData));
-            nextPacket.setHeaderValue(HEADER_ELEMENTS.CHECKSUM, CheckSumPacket);
+            //set the header for the next packet
+            nextPacket.seal(segmentNumber, byteCounter + readInDataSize == fileLength);
             returnPacket.add(nextPacket);
 
             //increase the segment number
@@ -111,132 +171,366 @@ class Packet {
             //increase the counter by the amount read in
             byteCounter = byteCounter + readInDataSize;
         }
+    }
 
-        return returnPacket;
+    //Segments the bytes remaining in parts, read back to back, into pooled packets appended to returnPacket.
+    //Prefer iterating a Segmenter directly so segments are only produced as they are needed.
+    static void Segmentation(ByteBuffer[] parts, List<Packet> returnPacket) {
+        Segmenter segmenter = new Segmenter(parts, DEFAULT_PACKET_SIZE);
+        if (!segmenter.hasNext()) {
+            throw new IllegalArgumentException("File Empty");
+        }
+        while (segmenter.hasNext()) returnPacket.add(segmenter.next());
     }
 
-    //Creates a new packet
+    //Creates a new packet by copying a received datagram into a pooled packet
     static Packet CreatePacket(DatagramPacket packet) {
-        Packet newPacket = new Packet();
-        ByteBuffer bytebuffer = ByteBuffer.wrap(packet.getData()); //wraps the byte array into the buffer
-        newPacket.setHeaderValue(HEADER_ELEMENTS.SEGMENT_NUMBER, bytebuffer.getShort() + ""); //sets header segment number
-        newPacket.setHeaderValue(HEADER_ELEMENTS.CHECKSUM, bytebuffer.getShort() + ""); //sets header checksum
-        byte[] PacketData = packet.getData(); //gets the packet data
-        byte[] remaining = new byte[PacketData.length - bytebuffer.position()]; //subtracts the package data length from the byte buffer position
-        //copies  an array from the specified source array, beginning at the specified position, to the specified position of the destination array
-        System.arraycopy(PacketData, bytebuffer.position(), remaining, 0, remaining.length); 
-        newPacket.setPacketData(remaining); //sets the packet data
+        int length = packet.getLength();
+        if (length < HEADER_SIZE || length > MAX_PACKET_SIZE)
+            throw new IllegalArgumentException("CREATE PACKET: bad datagram length = " + length);
+        Packet newPacket = acquire(length);
+        //copies the datagram bytes (header and data) into the packet's wire buffer
+        System.arraycopy(packet.getData(), packet.getOffset(), newPacket.packetBuffer, 0, length);
+        newPacket.decodeHeader(length);
         return newPacket; //returns the newly created packet
     }
 
-    /////////////////////////PACKAGE HEADER METHODS//////////////////////////////////
+    //Creates a new packet by copying the datagram between buffer's position and limit into a pooled packet
+    static Packet CreatePacket(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (length < HEADER_SIZE || length > MAX_PACKET_SIZE)
+            throw new IllegalArgumentException("CREATE PACKET: bad datagram length = " + length);
+        Packet newPacket = acquire(length);
+        buffer.get(newPacket.packetBuffer, 0, length);
+        newPacket.decodeHeader(length);
+        return newPacket;
+    }
 
-    //Check sum function that return the 16 bit checkSum value for a packet
-    static short CheckSum(byte[] packetBytes) {
-        long sum = 0;
-        //gets length of the packetBytes Array
-        int packetByteLength = packetBytes.length;
-        int count = 0;
-        while (packetByteLength > 1) { //while the length is greater than 1 then the bits will be shifted left 
-        	//get the packetByte in the array of the count shift it left 8 bits
-            sum += ((packetBytes[count]) << 8 & 0xFF00) | ((packetBytes[count + 1]) & 0x00FF);
-            //if a carry occurred then it is wrapped around
-            if ((sum & 0xFFFF0000) > 0) {
-                sum = ((sum & 0xFFFF) + 1);
-            }
-            //increase count by 2
-            //decrease packet byte length by 2
-            count += 2;
-            packetByteLength -= 2;
+    //Receives the next default sized datagram from the socket directly into a pooled packet
+    static Packet receive(DatagramSocket socket) throws IOException {
+        return receive(socket, DEFAULT_PACKET_SIZE);
+    }
+
+    //Receives the next datagram of up to packetSize bytes from the socket directly into a pooled packet,
+    //with no copy. Datagrams too short to hold a header are skipped.
+    static Packet receive(DatagramSocket socket, int packetSize) throws IOException {
+        Packet newPacket = acquire(packetSize);
+        try {
+            do {
+                newPacket.datagram.setData(newPacket.packetBuffer, 0, packetSize);
+                socket.receive(newPacket.datagram);
+            } while (newPacket.datagram.getLength() < HEADER_SIZE);
+        } catch (IOException e) {
+            newPacket.release();
+            throw e;
         }
+        newPacket.decodeHeader(newPacket.datagram.getLength());
+        return newPacket;
+    }
 
-        if (packetByteLength > 0) {
-            sum += (packetBytes[count] << 8 & 0xFF00);
-            if ((sum & 0xFFFF0000) > 0) { 
-                sum = ((sum & 0xFFFF) + 1);
-            }
+    //Receives the next datagram of up to packetSize bytes from the channel directly into a pooled packet and
+    //records who sent it. Returns null if the channel is non-blocking and nothing is waiting.
+    //Datagrams too short to hold a header are skipped.
+    static Packet receive(DatagramChannel channel, int packetSize) throws IOException {
+        Packet newPacket = acquire(packetSize);
+        SocketAddress sender;
+        try {
+            do {
+                newPacket.packetView.clear();
+                newPacket.packetView.limit(packetSize);
+                sender = channel.receive(newPacket.packetView);
+                if (sender == null) {
+                    newPacket.release();
+                    return null;
+                }
+            } while (newPacket.packetView.position() < HEADER_SIZE);
+        } catch (IOException e) {
+            newPacket.release();
+            throw e;
         }
-        //inverts the sum by getting the unary bitwise complement
-        return (short) (~sum & 0xFFFF);
+        newPacket.datagram.setSocketAddress(sender);
+        newPacket.decodeHeader(newPacket.packetView.position());
+        newPacket.packetView.clear();
+        return newPacket;
     }
 
+    //Copies this packet, header, data and sender, into another pooled packet, for a duplicated datagram
+    Packet duplicate() {
+        int length = HEADER_SIZE + packetDataSize;
+        Packet copy = acquire(length);
+        System.arraycopy(packetBuffer, 0, copy.packetBuffer, 0, length);
+        copy.decodeHeader(length);
+        if (datagram.getAddress() != null)
+            copy.datagram.setSocketAddress(datagram.getSocketAddress());
+        return copy;
+    }
 
-    //Get Header Element Values
-    String getHeaderValue(HEADER_ELEMENTS HeaderElements) {
-        switch (HeaderElements) {
-            case SEGMENT_NUMBER:
-                return PacketHeader.get(HEADER_SEGMENT_NUMBER);
-            case CHECKSUM:
-                return PacketHeader.get(HEADER_CHECKSUM);
-            default:
-                throw new IllegalArgumentException("HSomething is broken... bad broken");
-        }
+    //Creates an ACK or NAK for segmentNumber. An ACK carries the selective ack bits in its data.
+    static Packet createControl(byte type, int segmentNumber, long selectiveAcks) {
+        Packet newPacket = acquire();
+        newPacket.type = type;
+        newPacket.segmentNumber = segmentNumber;
+        newPacket.packetView.putLong(HEADER_SIZE, selectiveAcks);
+        newPacket.packetDataSize = Long.BYTES;
+        newPacket.encodeHeader();
+        return newPacket;
     }
 
+    //Creates an ACK carrying the first words of selectiveAcks, so its selective ack bits can cover a window
+    //wider than 64 segments
+    static Packet createControl(byte type, int segmentNumber, long[] selectiveAcks, int words) {
+        if (words < 1 || words > MAX_SELECTIVE_ACK_WORDS || words > selectiveAcks.length)
+            throw new IllegalArgumentException("CREATE CONTROL: bad selective ack words = " + words);
+        Packet newPacket = acquire();
+        newPacket.type = type;
+        newPacket.segmentNumber = segmentNumber;
+        for (int word = 0; word < words; word++)
+            newPacket.packetView.putLong(HEADER_SIZE + word * Long.BYTES, selectiveAcks[word]);
+        newPacket.packetDataSize = words * Long.BYTES;
+        newPacket.encodeHeader();
+        return newPacket;
+    }
 
-    //////////////////////////////PACKAGE DATA METHODS/////////////////////////////
+    //Appends up to maxBytes from src to the packet data and returns the number of bytes copied
+    int fill(ByteBuffer src, int maxBytes) {
+        int copy = Math.min(Math.min(maxBytes, src.remaining()), getMaxDataSize() - packetDataSize);
+        src.get(packetBuffer, HEADER_SIZE + packetDataSize, copy);
+        packetDataSize += copy;
+        return copy;
+    }
 
-    //SET header key/value pairs
-    private void setHeaderValue(HEADER_ELEMENTS HeaderElements, String HeaderValue) {
-        switch (HeaderElements) {
-            case SEGMENT_NUMBER:
-                PacketHeader.put(HEADER_SEGMENT_NUMBER, HeaderValue);
-                break;
-            case CHECKSUM:
-                PacketHeader.put(HEADER_CHECKSUM, HeaderValue);
-                break;
-            default:
-                throw new IllegalArgumentException("Something is broken... bad broken");
+    //Appends up to maxBytes read from channel to the packet data and returns the number of bytes read, or -1 at end of stream
+    int fill(ReadableByteChannel channel, int maxBytes) throws IOException {
+        int start = HEADER_SIZE + packetDataSize;
+        packetView.limit(start + Math.min(maxBytes, getMaxDataSize() - packetDataSize)).position(start);
+        try {
+            int read = channel.read(packetView);
+            if (read > 0)
+                packetDataSize += read;
+            return read;
+        } finally {
+            packetView.clear();
         }
     }
 
+    //Sets the header of a freshly filled data segment; the CheckSum (errors) covers the header and the data
+    void seal(int segmentNumber, boolean last) {
+        seal(TYPE_DATA, segmentNumber, last ? FLAG_LAST : 0);
+    }
+
+    //Sets the header of a freshly filled packet of any type
+    void seal(byte type, int segmentNumber, byte flags) {
+        seal(type, segmentNumber, 0, flags);
+    }
+
+    //Sets the header of a freshly filled packet belonging to a stream of a pipelined transfer
+    void seal(byte type, int segmentNumber, int streamId, byte flags) {
+        this.type = type;
+        this.segmentNumber = segmentNumber;
+        this.flags = flags;
+        this.streamId = streamId;
+        encodeHeader();
+    }
+
+    //Moves a sealed segment to another place in a transfer. Only the header words that change are taken
+    //out of the checksum and put back in (RFC 1624, HC' = ~(~HC + ~m + m')), so the data is never summed
+    //again; a segment that keeps its place, as in a single stream transfer, is left as it is.
+    void restamp(int segmentNumber, int streamId, byte flags) {
+        if (segmentNumber == this.segmentNumber && streamId == this.streamId && flags == this.flags)
+            return;
+        long sum = ~checkSum & 0xFFFF;
+        sum += replaceWord(HEADER_SEGMENT_NUMBER, segmentNumber >>> 16);
+        sum += replaceWord(HEADER_SEGMENT_NUMBER + 2, segmentNumber);
+        sum += replaceWord(HEADER_TYPE, (type & 0xFF) << 8 | (flags & 0xFF));
+        sum += replaceWord(HEADER_STREAM, streamId);
+        this.segmentNumber = segmentNumber;
+        this.streamId = streamId;
+        this.flags = flags;
+        checkSum = InternetChecksum.finish(sum);
+        packetView.putShort(HEADER_CHECKSUM, checkSum);
+    }
+
+    //Writes a 16 bit header word and returns ~old + new, its change to the one's complement sum
+    private int replaceWord(int offset, int word) {
+        int old = packetView.getShort(offset) & 0xFFFF;
+        packetView.putShort(offset, (short) word);
+        return (~old & 0xFFFF) + (word & 0xFFFF);
+    }
+
+    //Writes the typed header fields into the wire buffer, then the checksum over the header (with the
+    //checksum field zeroed) and the data, so a damaged segment number, type, flag or stream id is caught
+    private void encodeHeader() {
+        packetView.putInt(HEADER_SEGMENT_NUMBER, segmentNumber);
+        packetView.putShort(HEADER_CHECKSUM, (short) 0);
+        packetBuffer[HEADER_TYPE] = type;
+        packetBuffer[HEADER_FLAGS] = flags;
+        packetView.putShort(HEADER_STREAM, (short) streamId);
+        checkSum = CheckSum(packetBuffer, 0, HEADER_SIZE + packetDataSize);
+        packetView.putShort(HEADER_CHECKSUM, checkSum);
+    }
+
+    //Reads the typed header fields out of the wire buffer
+    private void decodeHeader(int length) {
+        segmentNumber = packetView.getInt(HEADER_SEGMENT_NUMBER);
+        checkSum = packetView.getShort(HEADER_CHECKSUM);
+        type = packetBuffer[HEADER_TYPE];
+        flags = packetBuffer[HEADER_FLAGS];
+        streamId = packetView.getShort(HEADER_STREAM) & MAX_STREAM_ID;
+        packetDataSize = length - HEADER_SIZE;
+    }
+
+    /////////////////////////PACKAGE HEADER METHODS//////////////////////////////////
+
+    //Check sum function that return the 16 bit checkSum value for a packet
+    static short CheckSum(byte[] packetBytes) {
+        return CheckSum(packetBytes, 0, packetBytes.length);
+    }
+
+    //Check sum over length bytes of packetBytes starting at offset, computed 8 bytes at a time by InternetChecksum
+    static short CheckSum(byte[] packetBytes, int offset, int length) {
+        return InternetChecksum.checkSum(packetBytes, offset, length);
+    }
+
+    //Get the segment number from the header
+    int getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    //Get the checksum carried in the header
+    short getCheckSum() {
+        return checkSum;
+    }
+
+    //Get the packet type (TYPE_DATA, TYPE_ACK or TYPE_NAK)
+    byte getType() {
+        return type;
+    }
+
+    //True if this is the final segment of the transfer
+    boolean isLastSegment() {
+        return (flags & FLAG_LAST) != 0;
+    }
+
+    //True if this is the final segment of its stream
+    boolean isEndOfStream() {
+        return (flags & FLAG_END_STREAM) != 0;
+    }
+
+    //Get the header flags
+    byte getFlags() {
+        return flags;
+    }
+
+    //Get the stream the segment belongs to; 0 unless the client pipelined several requests
+    int getStreamId() {
+        return streamId;
+    }
+
+    //Selective ack bits of an ACK: bit i set means segment getSegmentNumber() + 1 + i was received
+    long getSelectiveAcks() {
+        return getSelectiveAcks(0);
+    }
+
+    //Word of the selective ack bits of an ACK: bit i set means segment getSegmentNumber() + 1 + 64 * word + i
+    //was received
+    long getSelectiveAcks(int word) {
+        return word < getSelectiveAckWords() ? packetView.getLong(HEADER_SIZE + word * Long.BYTES) : 0;
+    }
+
+    //Number of selective ack words an ACK carries
+    int getSelectiveAckWords() {
+        return Math.min(packetDataSize / Long.BYTES, MAX_SELECTIVE_ACK_WORDS);
+    }
+
+    //Recomputes the checksum over the header and the data. The field sits on a 16 bit boundary, so summing
+    //it along with everything else gives all ones, a checkSum of 0, exactly when nothing was damaged.
+    boolean isCheckSumValid() {
+        return CheckSum(packetBuffer, 0, HEADER_SIZE + packetDataSize) == 0;
+    }
+
+
+    //////////////////////////////PACKAGE DATA METHODS/////////////////////////////
+
     //gets the packet data at an index
-    private byte GETPacketData(int index) {
-        if (index >= 0 && index < PackageData.length)
-            return PackageData[index];
+    byte GETPacketData(int index) {
+        if (index >= 0 && index < packetDataSize)
+            return packetBuffer[HEADER_SIZE + index];
         throw new IndexOutOfBoundsException(
                 "GET PACKET DATA INDEX OUT OF BOUNDS EXCEPTION: index = " + index);
     }
 
-    //get packet data
-    byte[] GETPacketData() {
-        return PackageData;
+    //sets the packet data at an index without touching the header (used by the Gremlin)
+    void setPacketData(int index, byte value) {
+        if (index >= 0 && index < packetDataSize)
+            packetBuffer[HEADER_SIZE + index] = value;
+        else
+            throw new IndexOutOfBoundsException(
+                    "SET PACKET DATA INDEX OUT OF BOUNDS EXCEPTION: index = " + index);
+    }
+
+    //copies the packet data into dest at offset and returns the number of bytes copied
+    int copyPacketData(byte[] dest, int offset) {
+        System.arraycopy(packetBuffer, HEADER_SIZE, dest, offset, packetDataSize);
+        return packetDataSize;
+    }
+
+    //XORs the packet data from index onwards into dest at offset and returns the number of bytes combined
+    int xorPacketData(int index, byte[] dest, int offset) {
+        int length = packetDataSize - index;
+        for (int i = 0; i < length; i++)
+            dest[offset + i] ^= packetBuffer[HEADER_SIZE + index + i];
+        return length;
+    }
+
+    //feeds length bytes of the packet data from index onwards to checksum
+    void updatePacketData(Checksum checksum, int index, int length) {
+        if (index < 0 || length < 0 || index + length > packetDataSize)
+            throw new IndexOutOfBoundsException("UPDATE PACKET DATA INDEX OUT OF BOUNDS EXCEPTION: index = " + index);
+        checksum.update(packetBuffer, HEADER_SIZE + index, length);
+    }
+
+    //writes the packet data to channel and returns the number of bytes written
+    int writePacketData(WritableByteChannel channel) throws IOException {
+        packetView.limit(HEADER_SIZE + packetDataSize).position(HEADER_SIZE);
+        try {
+            while (packetView.hasRemaining())
+                channel.write(packetView);
+            return packetDataSize;
+        } finally {
+            packetView.clear();
+        }
     }
 
     //get packet data size
     int getPacketDataSize() {
-        return PackageData.length;
+        return packetDataSize;
     }
 
-
-    //Takes an array of bytes to be set as the data segment.
-    //If the Packet contains data already, the data is overwritten.
-    //Throws IllegalArgumentException if the size of toSet does not
-    //conform with the size of the data segment in the packet.
-    private void setPacketData(byte[] toSet) throws IllegalArgumentException {
-        int argumentSize = toSet.length;
-        if (argumentSize > 0) {
-            PackageData = new byte[argumentSize];
-            System.arraycopy(toSet, 0, PackageData, 0, PackageData.length);
-        } else
-            throw new IllegalArgumentException(
-                    "ILLEGAL ARGUEMENT EXCEPTION-SET PACKET DATA: toSet.length = " + toSet.length);
+    //most data bytes this packet can carry after the header
+    int getMaxDataSize() {
+        return packetSize - HEADER_SIZE;
     }
 
-    //returns packet as a datagram packet
+    //returns packet as a datagram packet. The datagram is owned by this packet and reused on every call.
     DatagramPacket getDatagramPacket(InetAddress i, int port) {
-        byte[] setData = ByteBuffer.allocate(256)
-                .putShort(Short.parseShort(PacketHeader.get(HEADER_SEGMENT_NUMBER)))
-                .putShort(Short.parseShort(PacketHeader.get(HEADER_CHECKSUM)))
-                .put(PackageData)
-                .array();
+        datagram.setData(packetBuffer, 0, HEADER_SIZE + packetDataSize);
+        datagram.setAddress(i);
+        datagram.setPort(port);
+        return datagram;
+    }
+
+    //copies the wire bytes (header and data) into buffer, for sending through a DatagramChannel
+    void writeTo(ByteBuffer buffer) {
+        buffer.put(packetBuffer, 0, HEADER_SIZE + packetDataSize);
+    }
 
-        return new DatagramPacket(setData, setData.length, i, port);
+    //address the packet was last received from
+    InetAddress getAddress() {
+        return datagram.getAddress();
     }
 
-    //declaring enum Header_Elements for key/value pairs
-    public enum HEADER_ELEMENTS {
-        SEGMENT_NUMBER,
-        CHECKSUM
+    //port the packet was last received from
+    int getPort() {
+        return datagram.getPort();
     }
 }
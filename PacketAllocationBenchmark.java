@@ -0,0 +1,144 @@
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/** PacketAllocationBenchmark Class
+ * Measures bytes allocated and time spent per packet for the encode/decode round trip
+ * (Segmentation, getDatagramPacket, CreatePacket) of the pooled Packet against the original
+ * HashMap based packet, which is kept below as LegacyPacket for comparison.
+ * Run using java PacketAllocationBenchmark [fileSizeBytes] [iterations]
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public class PacketAllocationBenchmark {
+
+    public static void main(String args[]) throws Exception {
+        int fileSize = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;   //bytes segmented per iteration
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        byte[] fileBytes = new byte[fileSize];
+        for (int i = 0; i < fileBytes.length; i++) fileBytes[i] = (byte) ('a' + i % 26);
+        InetAddress address = InetAddress.getLoopbackAddress();
+
+        //warm up both paths so the JIT and the packet pool are in steady state
+        for (int i = 0; i < 10; i++) {
+            runPooled(fileBytes, address);
+            runLegacy(fileBytes, address);
+        }
+
+        report("Legacy Packet (HashMap header)", fileBytes.length, iterations, () -> runLegacy(fileBytes, address));
+        report("Pooled Packet (flyweight header)", fileBytes.length, iterations, () -> runPooled(fileBytes, address));
+    }
+
+    /** report
+     * Runs the round trip iterations times and prints the allocation rate and time per packet
+     *
+     * @param name: label printed with the results
+     * @param fileSize: bytes segmented per iteration
+     * @param iterations: number of round trips to measure
+     * @param roundTrip: returns the number of packets processed in one round trip
+     */
+    private static void report(String name, int fileSize, int iterations, RoundTrip roundTrip) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long packets = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) packets += roundTrip.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-34s %8d packets  %10.1f bytes/packet  %8.1f ns/packet  %8.1f MB/s%n",
+                name, packets, (double) allocated / packets, (double) elapsed / packets,
+                (double) fileSize * iterations / (elapsed / 1e9) / (1 << 20));
+    }
+
+    //Segments the file, encodes each packet as a datagram, decodes it again and releases everything
+    private static final ArrayList<Packet> pooledSegments = new ArrayList<>();
+    private static int runPooled(byte[] fileBytes, InetAddress address) {
+        Packet.Segmentation(fileBytes, pooledSegments);
+        int count = pooledSegments.size();
+        for (Packet packet : pooledSegments) {
+            DatagramPacket datagram = packet.getDatagramPacket(address, 10028);
+            Packet decoded = Packet.CreatePacket(datagram);
+            decoded.release();
+        }
+        Packet.release(pooledSegments);
+        return count;
+    }
+
+    //Same round trip through the original packet implementation
+    private static int runLegacy(byte[] fileBytes, InetAddress address) {
+        ArrayList<LegacyPacket> segments = LegacyPacket.Segmentation(fileBytes);
+        for (LegacyPacket packet : segments) {
+            DatagramPacket datagram = packet.getDatagramPacket(address, 10028);
+            LegacyPacket.CreatePacket(datagram);
+        }
+        return segments.size();
+    }
+
+    private interface RoundTrip {
+        int run() throws Exception;
+    }
+
+    /** LegacyPacket Class
+     * The original Packet implementation with a HashMap<String, String> header, kept only as the
+     * baseline for this benchmark
+     */
+    private static class LegacyPacket {
+        private static final String HEADER_SEGMENT_NUMBER = "SegmentNumber";
+        private static final String HEADER_CHECKSUM = "CheckSum";
+        private static final int PACKET_SIZE = 256;
+        private static final int PACKET_DATA_SIZE = PACKET_SIZE - 4;
+        private byte[] PackageData = new byte[PACKET_SIZE];
+        private final Map<String, String> PacketHeader = new HashMap<>();
+
+        static ArrayList<LegacyPacket> Segmentation(byte[] fileBytes) {
+            ArrayList<LegacyPacket> returnPacket = new ArrayList<>();
+            int byteCounter = 0;
+            int segmentNumber = 0;
+            while (byteCounter < fileBytes.length) {
+                LegacyPacket nextPacket = new LegacyPacket();
+                byte[] nextPacketData = new byte[PACKET_DATA_SIZE];
+                int readInDataSize = Math.min(PACKET_DATA_SIZE, fileBytes.length - byteCounter);
+                for (int i = 0; i < readInDataSize; i++) nextPacketData[i] = fileBytes[byteCounter + i];
+                nextPacket.PackageData = new byte[nextPacketData.length];
+                System.arraycopy(nextPacketData, 0, nextPacket.PackageData, 0, nextPacketData.length);
+                nextPacket.PacketHeader.put(HEADER_SEGMENT_NUMBER, segmentNumber + "");
+                nextPacket.PacketHeader.put(HEADER_CHECKSUM, String.valueOf(Packet.CheckSum(nextPacketData)));
+                returnPacket.add(nextPacket);
+                segmentNumber++;
+                byteCounter += readInDataSize;
+            }
+            return returnPacket;
+        }
+
+        static LegacyPacket CreatePacket(DatagramPacket packet) {
+            LegacyPacket newPacket = new LegacyPacket();
+            ByteBuffer bytebuffer = ByteBuffer.wrap(packet.getData());
+            newPacket.PacketHeader.put(HEADER_SEGMENT_NUMBER, bytebuffer.getShort() + "");
+            newPacket.PacketHeader.put(HEADER_CHECKSUM, bytebuffer.getShort() + "");
+            byte[] PacketData = packet.getData();
+            byte[] remaining = new byte[PacketData.length - bytebuffer.position()];
+            System.arraycopy(PacketData, bytebuffer.position(), remaining, 0, remaining.length);
+            newPacket.PackageData = new byte[remaining.length];
+            System.arraycopy(remaining, 0, newPacket.PackageData, 0, remaining.length);
+            return newPacket;
+        }
+
+        DatagramPacket getDatagramPacket(InetAddress i, int port) {
+            byte[] setData = ByteBuffer.allocate(PACKET_SIZE)
+                    .putShort(Short.parseShort(PacketHeader.get(HEADER_SEGMENT_NUMBER)))
+                    .putShort(Short.parseShort(PacketHeader.get(HEADER_CHECKSUM)))
+                    .put(PackageData)
+                    .array();
+            return new DatagramPacket(setData, setData.length, i, port);
+        }
+    }
+}
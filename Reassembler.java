@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/** Reassembler Class
+ * Replaces the O(n^2) Packet.ReassemblePacket. Segments are stored in a ring of windowSize slots
+ * indexed by segment number, so accepting an out of order or duplicate segment is O(1). Whenever the
+ * next expected segment arrives, the contiguous run of buffered segments is written straight to the
+ * output channel and the packets are released, so memory is bounded by the window, not the file.
+ * In a pipelined transfer each segment is written to the output for its stream instead.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class Reassembler {
+
+    private final Packet[] slots;       //buffered segments, indexed by segment % slots.length
+    private final WritableByteChannel[] outputs;   //indexed by stream id
+    private int expected;               //next segment to be written
+    private int end;                    //one past the highest segment accepted
+    private long bytesWritten;
+
+    /** Reassembler
+     *
+     * @param windowSize: number of segments from the next expected one that may be buffered
+     * @param output: channel the reassembled bytes are written to, in order
+     */
+    Reassembler(int windowSize, WritableByteChannel output) {
+        this(windowSize, new WritableByteChannel[]{output});
+    }
+
+    /** Reassembler
+     *
+     * @param windowSize: number of segments from the next expected one that may be buffered
+     * @param outputs: channel for each stream of a pipelined transfer; data for other streams is dropped
+     */
+    Reassembler(int windowSize, WritableByteChannel[] outputs) {
+        this.slots = new Packet[windowSize];
+        this.outputs = outputs;
+    }
+
+    /** accept
+     * Stores a segment and writes out any contiguous prefix. Ownership of the packet passes to the
+     * reassembler, which releases it once written or if it is not needed.
+     *
+     * @param packet: undamaged data segment
+     * @return true if the segment was new and inside the window
+     * @throws IOException if writing to the output channel fails
+     */
+    boolean accept(Packet packet) throws IOException {
+        int segment = packet.getSegmentNumber();
+        int slot = segment % slots.length;
+        if (segment < expected || segment >= expected + slots.length || slots[slot] != null) {
+            packet.release();   //duplicate or outside the window
+            return false;
+        }
+        slots[slot] = packet;
+        end = Math.max(end, segment + 1);
+        //flush the contiguous prefix straight to the output
+        while (slots[expected % slots.length] != null) {
+            slot = expected % slots.length;
+            int stream = slots[slot].getStreamId();
+            if (stream < outputs.length)
+                bytesWritten += slots[slot].writePacketData(outputs[stream]);
+            slots[slot].release();
+            slots[slot] = null;
+            expected++;
+        }
+        return true;
+    }
+
+    /** isBuffered
+     * @param segment: segment number
+     * @return true if the segment has been received, either written out or waiting in the ring
+     */
+    boolean isBuffered(int segment) {
+        if (segment < expected)
+            return true;
+        return segment < expected + slots.length && slots[segment % slots.length] != null;
+    }
+
+    /** isAwaited
+     * @param segment: segment number
+     * @return true if the segment is inside the window and has not been received yet
+     */
+    boolean isAwaited(int segment) {
+        return segment >= expected && segment < expected + slots.length && slots[segment % slots.length] == null;
+    }
+
+    /** getEnd
+     * @return one past the highest segment received; nothing from here on is buffered
+     */
+    int getEnd() {
+        return end;
+    }
+
+    /** getExpected
+     * @return next segment the output is waiting for; everything before it has been written
+     */
+    int getExpected() {
+        return expected;
+    }
+
+    /** getBytesWritten
+     * @return number of bytes written to the output so far
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /** close
+     * Releases any segments still waiting in the ring
+     */
+    void close() {
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != null) {
+                slots[slot].release();
+                slots[slot] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** ReceiveEngine Class
+ * Client receive path. A dedicated receiver thread does nothing but pull datagrams off a
+ * DatagramChannel straight into pooled packets and hand them to the consumer (the thread running
+ * the Gremlin, ErrorDetection, reassembly and ACKs) through an SpscQueue, so the socket is drained at
+ * line rate even while the consumer is busy writing the file. The socket receive buffer is enlarged
+ * to absorb bursts the receiver thread cannot take at once.
+ *
+ * Packets that arrive while the queue is full are dropped and counted, as the kernel would drop
+ * them from a full socket buffer; those kernel drops are counted too where the OS reports them.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class ReceiveEngine implements Closeable {
+
+    static final int DEFAULT_RECEIVE_BUFFER_BYTES = 4 << 20;
+    static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    //Linux counts UDP datagrams dropped because a socket receive buffer was full (host wide)
+    private static final String UDP_STATISTICS = "/proc/net/snmp";
+    private static final String RECEIVE_BUFFER_ERRORS = "RcvbufErrors";
+
+    private final DatagramChannel channel;
+    private final int packetSize;
+    private final SpscQueue<Packet> queue;
+    private final Thread receiver;
+    private final long kernelDropsAtStart;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong queueDrops = new AtomicLong();
+    private volatile Thread waiter;         //consumer parked waiting for a packet
+    private volatile IOException failure;   //why the receiver thread stopped, if the channel broke
+
+    /** ReceiveEngine
+     * Enlarges the channel's receive buffer and starts the receiver thread. The channel must be
+     * bound and in blocking mode, and must not be read by anything else from now on; it may still
+     * be used to send.
+     *
+     * @param channel: channel the transfer arrives on
+     * @param packetSize: largest datagram expected
+     * @param receiveBufferBytes: socket receive buffer to ask for; the OS may grant less
+     * @param queueCapacity: packets the receiver thread can hand over before dropping
+     */
+    ReceiveEngine(DatagramChannel channel, int packetSize, int receiveBufferBytes, int queueCapacity) throws IOException {
+        this.channel = channel;
+        this.packetSize = packetSize;
+        this.queue = new SpscQueue<>(queueCapacity);
+        channel.socket().setReceiveBufferSize(Math.max(channel.socket().getReceiveBufferSize(), receiveBufferBytes));
+        this.kernelDropsAtStart = readKernelDrops();
+        this.receiver = new Thread(this::receiveAll, "receive-engine");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /** take
+     * Waits for the next packet
+     *
+     * @return next packet received, owned by the caller until released
+     * @throws IOException if the channel failed
+     */
+    Packet take() throws IOException {
+        Packet packet;
+        while ((packet = poll(1, TimeUnit.SECONDS)) == null) {
+            //keep waiting
+        }
+        return packet;
+    }
+
+    /** poll
+     * Waits up to timeout for the next packet
+     *
+     * @return next packet received, owned by the caller until released, or null if none arrived in time
+     * @throws IOException if the channel failed
+     */
+    Packet poll(long timeout, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            Packet packet = queue.poll();
+            if (packet != null)
+                return packet;
+            if (failure != null)
+                throw failure;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            waiter = Thread.currentThread();
+            packet = queue.poll();      //look again now the receiver thread can see we are waiting
+            if (packet == null && failure == null)
+                LockSupport.parkNanos(this, remaining);
+            waiter = null;
+            if (packet != null)
+                return packet;
+        }
+    }
+
+    /** getReceiveBufferSize
+     * @return socket receive buffer the OS actually granted
+     */
+    int getReceiveBufferSize() throws IOException {
+        return channel.socket().getReceiveBufferSize();
+    }
+
+    /** getReceived
+     * @return datagrams taken off the socket
+     */
+    long getReceived() {
+        return received.get();
+    }
+
+    /** getQueueDrops
+     * @return datagrams dropped because the consumer fell a full queue behind
+     */
+    long getQueueDrops() {
+        return queueDrops.get();
+    }
+
+    /** getKernelDrops
+     * @return UDP datagrams the OS dropped from full receive buffers since the engine started, across
+     * the whole host, or -1 if the OS does not report them
+     */
+    long getKernelDrops() {
+        long now = readKernelDrops();
+        return now < 0 || kernelDropsAtStart < 0 ? -1 : now - kernelDropsAtStart;
+    }
+
+    /** close
+     * Closes the channel, stops the receiver thread and releases packets nobody took
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        try {
+            receiver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Packet packet;
+        while ((packet = queue.poll()) != null)
+            packet.release();
+    }
+
+    @Override
+    public String toString() {
+        long kernelDrops = getKernelDrops();
+        return "Received " + getReceived() + " datagrams, " + getQueueDrops() + " dropped by a full queue"
+                + (kernelDrops < 0 ? "" : ", " + kernelDrops + " dropped by full socket buffers on this host");
+    }
+
+    //Receiver thread: moves datagrams from the socket to the queue until the channel is closed
+    private void receiveAll() {
+        try {
+            while (true) {
+                Packet packet = Packet.receive(channel, packetSize);
+                received.lazySet(received.get() + 1);   //only this thread writes the counters
+                if (!queue.offer(packet)) {
+                    queueDrops.lazySet(queueDrops.get() + 1);
+                    packet.release();
+                    continue;
+                }
+                VarHandle.fullFence();      //publish before checking for a parked consumer
+                Thread consumer = waiter;
+                if (consumer != null)
+                    LockSupport.unpark(consumer);
+            }
+        } catch (ClosedChannelException e) {
+            //closed by close(), or by an interrupt
+        } catch (IOException e) {
+            failure = e;
+            Thread consumer = waiter;
+            if (consumer != null)
+                LockSupport.unpark(consumer);
+        }
+    }
+
+    //Reads the host's UDP receive buffer error count, or -1 if it is not available
+    private static long readKernelDrops() {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get(UDP_STATISTICS));
+            for (int i = 0; i + 1 < lines.size(); i++) {
+                if (!lines.get(i).startsWith("Udp:") || !lines.get(i + 1).startsWith("Udp:"))
+                    continue;
+                String[] names = lines.get(i).trim().split("\\s+");
+                String[] values = lines.get(i + 1).trim().split("\\s+");
+                for (int column = 1; column < names.length && column < values.length; column++) {
+                    if (names[column].equals(RECEIVE_BUFFER_ERRORS))
+                        return Long.parseLong(values[column]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            //not Linux, or a format we do not know
+        }
+        return -1;
+    }
+}
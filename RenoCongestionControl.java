@@ -0,0 +1,57 @@
+/** RenoCongestionControl Class
+ * Reno style additive increase, multiplicative decrease. The window doubles every round trip in
+ * slow start, then grows by one segment per round trip; a loss halves it and a timeout drops it to
+ * one segment and starts slow start again.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class RenoCongestionControl implements CongestionControl {
+
+    private final int maxWindow;
+    private double window;
+    private double slowStartThreshold;
+
+    /** RenoCongestionControl
+     *
+     * @param maxWindow: largest window the transfer allows
+     */
+    RenoCongestionControl(int maxWindow) {
+        this.maxWindow = maxWindow;
+        this.window = Math.min(INITIAL_WINDOW, maxWindow);
+        this.slowStartThreshold = maxWindow;
+    }
+
+    @Override
+    public int getWindow() {
+        return Math.max(1, (int) window);
+    }
+
+    @Override
+    public void onAck(int acknowledged, RttEstimator rtt, long now) {
+        for (int i = 0; i < acknowledged; i++) {
+            if (window < slowStartThreshold)
+                window += 1;            //slow start
+            else
+                window += 1 / window;   //congestion avoidance, one segment per window
+        }
+        window = Math.min(window, maxWindow);
+    }
+
+    @Override
+    public void onLoss(long now) {
+        slowStartThreshold = Math.max(2, window / 2);
+        window = slowStartThreshold;
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        slowStartThreshold = Math.max(2, window / 2);
+        window = 1;
+    }
+
+    @Override
+    public String getName() {
+        return "reno";
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/** Request Class
+ * Parses the "GET <file> HTTP/1.0" request line sent by the client and any
+ * "Name: value" header lines that follow it. A "PROBE <size> HTTP/1.0" request is a path MTU
+ * probe from MtuProbe; the name is then the probe size and the datagram is padded out to it.
+ *
+ * A datagram may pipeline several GET requests back to back, each ended by its blank line. They are
+ * served as one transfer, one stream per request in order; the transfer settings (ARQ, Window,
+ * Packet-Size, Congestion and FEC) are taken from the first request. Any request may carry a
+ * "Range: bytes=first-last" header to fetch only part of its file, and an "Accept-Encoding: deflate"
+ * header to have the whole file sent deflated. A "Request-Id" header in the first request names the
+ * transfer; the client sends the same one when it resends the request, and a new one for each transfer.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class Request {
+
+    static final int MAX_PIPELINED_REQUESTS = 256;  //most GETs one datagram may carry
+
+    private final String method;
+    private final String fileName;
+    //header names are stored lower case so lookups are case insensitive
+    private final Map<String, String> headers = new HashMap<>();
+
+    private Request(String method, String fileName) {
+        this.method = method;
+        this.fileName = fileName;
+    }
+
+    /** parse
+     * Parses a request datagram
+     *
+     * @param data: bytes received from the client
+     * @param length: number of valid bytes in data
+     * @return the parsed request, the first one if several were pipelined
+     * @throws IllegalArgumentException if there is no request line
+     */
+    static Request parse(byte[] data, int length) {
+        return parseAll(data, length).get(0);
+    }
+
+    /** parseAll
+     * Parses a request datagram that may pipeline several GET requests
+     *
+     * @param data: bytes received from the client
+     * @param length: number of valid bytes in data
+     * @return the parsed requests in the order they were sent; a PROBE is always alone
+     * @throws IllegalArgumentException if there is no request line, or too many requests
+     */
+    static List<Request> parseAll(byte[] data, int length) {
+        Scanner readRequest = new Scanner(new String(data, 0, length));
+        try {
+            List<Request> requests = new ArrayList<>(1);
+            String line;
+            while ((line = nextRequestLine(readRequest)) != null) {
+                Request request = parseRequestLine(line);
+                readHeaders(readRequest, request);
+                requests.add(request);
+                if (request.isProbe())
+                    break;  //the rest of a probe is padding
+                if (requests.size() > MAX_PIPELINED_REQUESTS)
+                    throw new IllegalArgumentException("More than " + MAX_PIPELINED_REQUESTS + " pipelined requests");
+            }
+            if (requests.isEmpty())
+                throw new IllegalArgumentException("Empty request");
+            return requests;
+        } finally {
+            readRequest.close();
+        }
+    }
+
+    //Skips blank lines between pipelined requests; null at the end of the datagram
+    private static String nextRequestLine(Scanner readRequest) {
+        while (readRequest.hasNextLine()) {
+            String line = readRequest.nextLine().trim();
+            if (!line.isEmpty())
+                return line;
+        }
+        return null;
+    }
+
+    private static Request parseRequestLine(String line) {
+        Scanner requestLine = new Scanner(line);
+        if (!requestLine.hasNext())
+            throw new IllegalArgumentException("Empty request line");
+        String method = requestLine.next();
+        if (!requestLine.hasNext())
+            throw new IllegalArgumentException("Request has no file name");
+        if (!method.equals("GET") && !method.equals(MtuProbe.METHOD))
+            throw new IllegalArgumentException("Unsupported method: " + method);
+        return new Request(method, requestLine.next());
+    }
+
+    private static void readHeaders(Scanner readRequest, Request request) {
+        while (readRequest.hasNextLine()) {  //header lines until the blank line
+            String line = readRequest.nextLine().trim();
+            if (line.isEmpty())
+                break;
+            int colon = line.indexOf(':');
+            if (colon > 0)
+                request.headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    /** getArqMode
+     * @param defaultMode: used when the client did not send an ARQ header
+     * @return retransmission scheme the client asked for
+     */
+    ArqMode getArqMode(ArqMode defaultMode) {
+        return ArqMode.parse(getHeader("ARQ", defaultMode.getHeaderName()));
+    }
+
+    /** getWindowSize
+     * @param defaultWindowSize: used when the client did not send a Window header
+     * @return window the client asked for, kept between 1 and SlidingWindowSender.MAX_WINDOW_SIZE
+     */
+    int getWindowSize(int defaultWindowSize) {
+        int windowSize = Integer.parseInt(getHeader("Window", String.valueOf(defaultWindowSize)));
+        return Math.max(1, Math.min(SlidingWindowSender.MAX_WINDOW_SIZE, windowSize));
+    }
+
+    /** getCongestionControl
+     * @param defaultName: used when the client did not send a Congestion header
+     * @param windowSize: window the transfer runs with, which the controller never exceeds
+     * @return a new congestion controller of the kind the client asked for
+     */
+    CongestionControl getCongestionControl(String defaultName, int windowSize) {
+        return CongestionControl.create(getHeader("Congestion", defaultName), windowSize);
+    }
+
+    /** getFecEncoder
+     * @param packetSize: packet size the transfer runs with
+     * @return parity encoder for the FEC header the client sent, or null when FEC is off
+     */
+    FecEncoder getFecEncoder(int packetSize) {
+        int[] fec = FecEncoder.parse(getHeader("FEC", FecEncoder.OFF));
+        return fec == null ? null : new FecEncoder(fec[0], fec[1], packetSize);
+    }
+
+    /** hasFec
+     * @return true if the client asked for parity segments
+     */
+    boolean hasFec() {
+        return FecEncoder.parse(getHeader("FEC", FecEncoder.OFF)) != null;
+    }
+
+    /** getPacketSize
+     * @param defaultPacketSize: used when the client did not send a Packet-Size header
+     * @return datagram size the client asked for, kept between Packet.MIN_PACKET_SIZE and Packet.MAX_PACKET_SIZE
+     */
+    int getPacketSize(int defaultPacketSize) {
+        int packetSize = Integer.parseInt(getHeader("Packet-Size", String.valueOf(defaultPacketSize)));
+        return Math.max(Packet.MIN_PACKET_SIZE, Math.min(Packet.MAX_PACKET_SIZE, packetSize));
+    }
+
+    /** getRequestId
+     * @return the Request-Id header, the same for every resend of one request, or null if none was sent
+     */
+    String getRequestId() {
+        return getHeader("Request-Id", null);
+    }
+
+    /** getRange
+     * @return the Range header, such as "bytes=1000-", or null to fetch the whole file
+     */
+    String getRange() {
+        return getHeader("Range", null);
+    }
+
+    /** acceptsEncoding
+     * @param coding: content coding such as "deflate"
+     * @return true if the Accept-Encoding header lists the coding, or "*", without "q=0"
+     */
+    boolean acceptsEncoding(String coding) {
+        for (String accepted : getHeader("Accept-Encoding", "").split(",")) {
+            String[] parameters = accepted.split(";");
+            String name = parameters[0].trim();
+            if (!name.equalsIgnoreCase(coding) && !name.equals("*"))
+                continue;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") && parameter.substring(2).trim().matches("0(\\.0*)?"))
+                    return false;   //explicitly refused
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** isProbe
+     * @return true if this is a path MTU probe rather than a file request
+     */
+    boolean isProbe() {
+        return method.equals(MtuProbe.METHOD);
+    }
+
+    /** getHeader
+     * @param name: header name, case insensitive
+     * @param defaultValue: returned when the header was not sent
+     * @return the header value
+     */
+    String getHeader(String name, String defaultValue) {
+        return headers.getOrDefault(name.toLowerCase(), defaultValue);
+    }
+}
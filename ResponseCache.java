@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/** ResponseCache Class
+ * Byte bounded cache of ready to send responses for popular files. An entry holds every segment of
+ * a response already encoded as it goes on the wire (header, checksum and data), back to back in
+ * one array, so a repeated request skips opening the file, building the HTTP header, segmenting and
+ * checksumming and only copies each datagram into a pooled packet as the window opens.
+ *
+ * Entries are keyed by file name, packet size and whether the client accepts a deflated body, and
+ * remember the file's modification time and length; a request that finds either changed drops the
+ * entry and reads the file again. A deflated response is deflated once, when it is cached. The least
+ * recently used entries are evicted once the cache is over capacity, and responses bigger than a
+ * quarter of the capacity are streamed from the file as before instead of being cached. A deflated
+ * response that turns out too big to cache leaves a small entry behind instead, so later requests for
+ * the same version of the file stream it as it is rather than deflating it again every time.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class ResponseCache {
+
+    static final long DEFAULT_CAPACITY_BYTES = 64L << 20;
+
+    private final long capacity;
+    private final long maxEntryBytes;
+    //access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /** ResponseCache
+     *
+     * @param capacity: most bytes of encoded segments to keep, 0 to cache nothing
+     */
+    ResponseCache(long capacity) {
+        this.capacity = capacity;
+        this.maxEntryBytes = Math.min(capacity / 4, Integer.MAX_VALUE - 8);   //one array per entry
+    }
+
+    /** get
+     * Returns the segments of the response for a file, from the cache when the cached copy is still
+     * current, otherwise read from the file (and cached if it fits). Safe to call from any thread.
+     *
+     * @param fileName: file requested by the client
+     * @param packetSize: wire size of each full segment
+     * @param acceptsDeflate: true if the client accepts a deflated body
+     * @return segments of the response, each owned by the caller until released
+     * @throws IOException if the file cannot be opened
+     */
+    Iterator<Packet> get(String fileName, int packetSize, boolean acceptsDeflate) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(fileName), BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String key = fileName + '\0' + packetSize + (acceptsDeflate ? "\0" + FileResponse.DEFLATE : "");
+        boolean deflate = acceptsDeflate;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.fileLength == attributes.size()) {
+                if (entry.wire != null) {
+                    hits++;
+                    return new CachedSegments(entry);
+                }
+                deflate = false;    //deflated, it was too big to cache last time
+            } else if (entry != null) {    //the file changed since it was cached
+                remove(key);
+                invalidations++;
+            }
+            misses++;
+        }
+
+        FileResponse response = FileResponse.open(fileName, null, deflate);
+        Segmenter segmenter = new Segmenter(response.getParts(), packetSize);
+        long responseLength = response.getParts()[0].remaining() + response.getContentLength();
+        long segments = (responseLength + packetSize - Packet.HEADER_SIZE - 1) / (packetSize - Packet.HEADER_SIZE);
+        long encodedLength = responseLength + segments * Packet.HEADER_SIZE;
+        if (encodedLength + segments * Integer.BYTES > maxEntryBytes) {
+            if (response.isDeflated())  //remember not to pay for deflating it again
+                put(key, new Entry(lastModified, attributes.size()));
+            return segmenter;   //too big to be worth caching, stream it from the mapping
+        }
+
+        Entry entry = new Entry(lastModified, attributes.size(), (int) encodedLength, (int) segments);
+        ByteBuffer encoded = ByteBuffer.wrap(entry.wire);
+        for (int segment = 0; segmenter.hasNext(); segment++) {
+            Packet packet = segmenter.next();
+            entry.offsets[segment] = encoded.position();
+            packet.writeTo(encoded);
+            packet.release();
+        }
+        entry.offsets[(int) segments] = encoded.position();
+        put(key, entry);
+        return new CachedSegments(entry);
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("cache %d hits, %d misses, %d evictions, %d invalidations, %.1f MB in %d files",
+                hits, misses, evictions, invalidations, size / (double) (1 << 20), entries.size());
+    }
+
+    //Drops the least recently used entries until the cache fits its capacity
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (size > capacity && eldest.hasNext()) {
+            size -= eldest.next().getValue().size();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        size += entry.size();
+        evict();
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null)
+            size -= old.size();
+    }
+
+    /** Entry Class
+     * Encoded segments of one response, or only the file's version for a deflated response too big to cache
+     */
+    private static class Entry {
+        final long lastModified;
+        final long fileLength;      //of the file, not of a deflated body
+        final byte[] wire;      //every segment's datagram, back to back; null when too big to cache
+        final int[] offsets;    //segment i is wire[offsets[i]] up to wire[offsets[i + 1]]
+
+        Entry(long lastModified, long fileLength, int wireLength, int segments) {
+            this.lastModified = lastModified;
+            this.fileLength = fileLength;
+            this.wire = new byte[wireLength];
+            this.offsets = new int[segments + 1];
+        }
+
+        Entry(long lastModified, long fileLength) {
+            this.lastModified = lastModified;
+            this.fileLength = fileLength;
+            this.wire = null;
+            this.offsets = null;
+        }
+
+        long size() {
+            return wire == null ? 2 * Long.BYTES : wire.length + (long) offsets.length * Integer.BYTES;
+        }
+    }
+
+    /** CachedSegments Class
+     * Hands out the segments of a cached response as pooled packets. Entries are never changed once
+     * cached, so any number of transfers can read the same one.
+     */
+    private static class CachedSegments implements Iterator<Packet> {
+        private final Entry entry;
+        private final ByteBuffer view;
+        private int segment;
+
+        CachedSegments(Entry entry) {
+            this.entry = entry;
+            this.view = ByteBuffer.wrap(entry.wire);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return segment < entry.offsets.length - 1;
+        }
+
+        @Override
+        public Packet next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            view.clear();
+            view.position(entry.offsets[segment]).limit(entry.offsets[segment + 1]);
+            segment++;
+            return Packet.CreatePacket(view);
+        }
+    }
+}
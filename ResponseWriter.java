@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/** ResponseWriter Class
+ * Channel the reassembled response is streamed into. The HTTP header is collected until the blank
+ * line that ends it, and every byte after that is written unchanged to the body channel.
+ *
+ * A ResponseWriter for a striped download instead writes the body into a file shared with the other
+ * stripes, at the offset its Content-Range header gives, so the stripes reassemble the file in place
+ * whatever order their segments arrive in.
+ *
+ * The body must be as long as the header's Content-Length says, so a response that ends early is
+ * reported when the writer is closed rather than saved short.
+ *
+ * A body sent with "Content-Encoding: deflate" is inflated as it is written, so the file is saved as
+ * it was on the server without the deflated copy ever being held whole.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class ResponseWriter implements WritableByteChannel {
+
+    //largest header accepted before the response is treated as headerless
+    private static final int MAX_HEADER_SIZE = 8192;
+    private static final String CONTENT_RANGE = "\r\nContent-Range: bytes ";
+    private static final String CONTENT_LENGTH = "\r\nContent-Length: ";
+    private static final String CONTENT_DEFLATE = "\r\nContent-Encoding: " + FileResponse.DEFLATE + "\r\n";
+    private static final int INFLATE_BUFFER_SIZE = 64 << 10;
+
+    private final WritableByteChannel body;
+    private final FileChannel sharedFile;   //file the stripes of a striped download are written into
+    private long bodyPosition;              //offset of this stripe in sharedFile
+    private final ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_SIZE);
+    private boolean headerComplete;
+    private long bodyBytes;
+    private Inflater inflater;          //set once the header says the body is deflated
+    private ByteBuffer inflated;
+    private long encodedBytes;          //body bytes as received, before inflating
+
+    /** ResponseWriter
+     *
+     * @param body: channel that receives the response body
+     */
+    ResponseWriter(WritableByteChannel body) {
+        this(body, null);
+    }
+
+    private ResponseWriter(WritableByteChannel body, FileChannel sharedFile) {
+        this.body = body;
+        this.sharedFile = sharedFile;
+    }
+
+    /** stripe
+     * Creates the writer for one stripe of a striped download. Stripes may be written from different
+     * threads since each writes only its own part of the file.
+     *
+     * @param sharedFile: file every stripe is written into; not closed by the writer
+     * @return writer that puts the body at the offset given by the response's Content-Range header
+     */
+    static ResponseWriter stripe(FileChannel sharedFile) {
+        return new ResponseWriter(sharedFile, sharedFile);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int written = src.remaining();
+        while (!headerComplete && src.hasRemaining()) {
+            if (!header.hasRemaining())
+                throw new IOException("Response header longer than " + MAX_HEADER_SIZE + " bytes");
+            header.put(src.get());
+            int end = header.position();
+            headerComplete = end >= 4 && header.get(end - 4) == '\r' && header.get(end - 3) == '\n'
+                    && header.get(end - 2) == '\r' && header.get(end - 1) == '\n';
+            if (headerComplete && sharedFile != null)
+                bodyPosition = getRangeStart();
+            if (headerComplete && getHeader().contains(CONTENT_DEFLATE)) {
+                inflater = new Inflater();
+                inflated = ByteBuffer.allocate(INFLATE_BUFFER_SIZE);
+            }
+        }
+        encodedBytes += src.remaining();
+        if (inflater != null)
+            inflate(src);
+        while (src.hasRemaining())
+            writeBody(src);
+        return written;
+    }
+
+    //Inflates all of src, writing out whatever it expands to
+    private void inflate(ByteBuffer src) throws IOException {
+        inflater.setInput(src);
+        try {
+            int length;
+            do {
+                if (inflater.needsDictionary())
+                    throw new IOException("Deflated body needs a preset dictionary");
+                inflated.clear();
+                length = inflater.inflate(inflated);
+                inflated.flip();
+                while (inflated.hasRemaining())
+                    writeBody(inflated);
+            } while (length > 0 || (!inflater.needsInput() && !inflater.finished()));
+        } catch (DataFormatException e) {
+            throw new IOException("Bad deflated body: " + e.getMessage(), e);
+        }
+        src.position(src.limit());  //anything after the end of the deflated data is ignored
+    }
+
+    private void writeBody(ByteBuffer src) throws IOException {
+        bodyBytes += sharedFile != null ? sharedFile.write(src, bodyPosition + bodyBytes) : body.write(src);
+    }
+
+    /** getHeader
+     * @return the response header including the final blank line, or null if no complete header arrived
+     */
+    String getHeader() {
+        return headerComplete ? new String(header.array(), 0, header.position(), StandardCharsets.US_ASCII) : null;
+    }
+
+    /** getPrefix
+     * @return everything received so far when no complete header arrived
+     */
+    byte[] getPrefix() {
+        byte[] prefix = new byte[header.position()];
+        System.arraycopy(header.array(), 0, prefix, 0, prefix.length);
+        return prefix;
+    }
+
+    /** getStatusCode
+     * @return status code from the response's status line, such as 200 or 404, or -1 if no complete
+     *         header arrived
+     */
+    int getStatusCode() {
+        String text = getHeader();
+        int space = text == null ? -1 : text.indexOf(' ');
+        if (space < 0 || space + 4 > text.length())
+            return -1;
+        try {
+            return Integer.parseInt(text.substring(space + 1, space + 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** getRangeStart
+     * @return offset of the first body byte in the whole file, from the Content-Range header, or 0
+     */
+    long getRangeStart() {
+        long start = headerNumber(CONTENT_RANGE);
+        return start < 0 ? 0 : start;    //"*/size" means no body
+    }
+
+    /** getContentLength
+     * @return body bytes the server said it would send, before inflating, or -1 if the header has no length
+     */
+    long getContentLength() {
+        return headerNumber(CONTENT_LENGTH);
+    }
+
+    //Number that follows name in the header, or -1 if there is none
+    private long headerNumber(String name) {
+        String text = getHeader();
+        int start = text == null ? -1 : text.indexOf(name);
+        if (start < 0)
+            return -1;
+        start += name.length();
+        int end = start;
+        while (end < text.length() && Character.isDigit(text.charAt(end))) end++;
+        return end > start ? Long.parseLong(text.substring(start, end)) : -1;
+    }
+
+    /** getBodyBytes
+     * @return number of body bytes written, after inflating
+     */
+    long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    /** getEncodedBytes
+     * @return number of body bytes received, before inflating
+     */
+    long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /** isDeflated
+     * @return true if the body arrived deflated
+     */
+    boolean isDeflated() {
+        return inflater != null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return body.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean truncated = inflater != null && !inflater.finished();
+        long contentLength = getContentLength();
+        if (inflater != null)
+            inflater.end();
+        if (sharedFile == null)
+            body.close();   //a shared file is closed once every stripe is done
+        if (truncated)
+            throw new IOException("Deflated body ended early");
+        if (contentLength >= 0 && encodedBytes != contentLength)
+            throw new IOException("Response body was " + encodedBytes + " bytes, Content-Length said " + contentLength);
+    }
+}
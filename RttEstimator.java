@@ -0,0 +1,62 @@
+/** RttEstimator Class
+ * Smoothed round trip time and retransmission timeout, computed as in RFC 6298. Samples are only
+ * taken from segments that were sent once (Karn's algorithm), and each timeout doubles the
+ * retransmission timeout until a fresh sample arrives. All times are in nanoseconds.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class RttEstimator {
+
+    static final long MIN_RETRANSMIT_TIMEOUT_MS = 50;
+    static final long MAX_RETRANSMIT_TIMEOUT_MS = 2000;
+    private static final long MIN_RETRANSMIT_TIMEOUT = MIN_RETRANSMIT_TIMEOUT_MS * 1_000_000L;
+    private static final long MAX_RETRANSMIT_TIMEOUT = MAX_RETRANSMIT_TIMEOUT_MS * 1_000_000L;
+
+    private long smoothedRtt = -1;  //-1 until the first sample
+    private long rttVariation;
+    private long retransmitTimeout;
+
+    /** RttEstimator
+     *
+     * @param initialTimeoutMs: retransmission timeout used until the first sample
+     */
+    RttEstimator(long initialTimeoutMs) {
+        this.retransmitTimeout = initialTimeoutMs * 1_000_000L;
+    }
+
+    /** onSample
+     * @param rtt: time from sending a segment to its acknowledgement
+     */
+    void onSample(long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2;
+        } else {
+            rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+        }
+        retransmitTimeout = Math.max(MIN_RETRANSMIT_TIMEOUT, Math.min(MAX_RETRANSMIT_TIMEOUT, smoothedRtt + 4 * rttVariation));
+    }
+
+    /** backoff
+     * Doubles the retransmission timeout after a timeout
+     */
+    void backoff() {
+        retransmitTimeout = Math.min(MAX_RETRANSMIT_TIMEOUT, retransmitTimeout * 2);
+    }
+
+    /** getSmoothedRtt
+     * @return smoothed round trip time, or -1 before the first sample
+     */
+    long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    /** getRetransmitTimeout
+     * @return how long a segment may go unacknowledged before it is resent
+     */
+    long getRetransmitTimeout() {
+        return retransmitTimeout;
+    }
+}
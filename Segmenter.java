@@ -0,0 +1,117 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Segmenter Class
+ * Streaming replacement for building the whole ArrayList of packets up front. Each call to next()
+ * fills one pooled packet from the response source, so the sender only holds the segments that are
+ * in its window and the first segment can leave before the rest of the file has been touched.
+ *
+ * The source is a sequence of buffers (for example the header and memory mapped file of a
+ * FileResponse), optionally followed by a channel whose length is known in advance.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class Segmenter implements Iterator<Packet> {
+
+    private final ByteBuffer[] parts;
+    private final ReadableByteChannel body;
+    private final int packetSize;
+    private int partIndex;
+    private ByteBuffer current;
+    private long remaining;     //bytes of the response not yet segmented
+    private int segmentNumber;
+
+    /** Segmenter
+     * Segments the bytes remaining in parts, read back to back. The positions of parts are left unchanged.
+     *
+     * @param parts: buffers that make up the response
+     * @param packetSize: wire size of each full segment, header included
+     */
+    Segmenter(ByteBuffer[] parts, int packetSize) {
+        this(parts, null, 0, packetSize);
+    }
+
+    /** Segmenter
+     * Segments header followed by bodyLength bytes read from body
+     *
+     * @param header: response header
+     * @param body: channel positioned at the start of the body; closed by the caller
+     * @param bodyLength: number of body bytes, usually taken from file metadata
+     * @param packetSize: wire size of each full segment, header included
+     */
+    Segmenter(ByteBuffer header, ReadableByteChannel body, long bodyLength, int packetSize) {
+        this(new ByteBuffer[]{header}, body, bodyLength, packetSize);
+    }
+
+    private Segmenter(ByteBuffer[] parts, ReadableByteChannel body, long bodyLength, int packetSize) {
+        if (packetSize <= Packet.HEADER_SIZE || packetSize > Packet.MAX_PACKET_SIZE)
+            throw new IllegalArgumentException("SEGMENTER: bad packet size = " + packetSize);
+        this.parts = parts;
+        this.body = body;
+        this.packetSize = packetSize;
+        this.remaining = bodyLength;
+        for (ByteBuffer part : parts) remaining += part.remaining();
+        this.current = parts.length > 0 ? parts[0].duplicate() : ByteBuffer.allocate(0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    /** next
+     * @return the next segment, owned by the caller until released
+     * @throws UncheckedIOException if the body channel fails or ends early
+     */
+    @Override
+    public Packet next() {
+        if (remaining <= 0)
+            throw new NoSuchElementException();
+        Packet nextPacket = Packet.acquire((int) Math.min(packetSize, Packet.HEADER_SIZE + remaining));
+        int readInDataSize = nextPacket.getMaxDataSize();
+        try {
+            int filled = 0;
+            while (filled < readInDataSize) {  //copy from as many parts as it takes to fill the segment
+                filled += fillFromSource(nextPacket, readInDataSize - filled);
+            }
+        } catch (IOException e) {
+            nextPacket.release();
+            throw new UncheckedIOException(e);
+        }
+        remaining -= readInDataSize;
+        nextPacket.seal(segmentNumber++, remaining == 0);
+        return nextPacket;
+    }
+
+    /** getSegmentsProduced
+     * @return number of segments handed out so far
+     */
+    int getSegmentsProduced() {
+        return segmentNumber;
+    }
+
+    /** getPacketSize
+     * @return wire size of each full segment
+     */
+    int getPacketSize() {
+        return packetSize;
+    }
+
+    //Copies up to wanted bytes from the current buffer, moving on to the next buffer or the body channel
+    private int fillFromSource(Packet packet, int wanted) throws IOException {
+        while (!current.hasRemaining() && partIndex + 1 < parts.length)
+            current = parts[++partIndex].duplicate();
+        if (current.hasRemaining())
+            return packet.fill(current, wanted);
+        int read = packet.fill(body, wanted);
+        if (read < 0)
+            throw new EOFException("Body ended " + remaining + " bytes early");
+        return read;
+    }
+}
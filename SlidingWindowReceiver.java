@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/** SlidingWindowReceiver Class
+ * Receiver half of the windowed ARQ transfer. Accepts data segments, answers each with a cumulative
+ * ACK (plus selective ack bits in Selective Repeat mode) or a NAK for damaged segments, and tracks
+ * when the whole transfer has arrived. The selective ack bits run to as many 64 bit words as the
+ * window needs, so a loss anywhere in a large window is reported without waiting for a timeout.
+ * Accepted segments go through a Reassembler that streams them to the output channel in order.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class SlidingWindowReceiver {
+
+    private final ArqMode mode;
+    private final Reassembler reassembler;
+    private final long[] selectiveAcks;     //reused for every ACK
+    private int lastSegment = -1;   //segment number flagged as last, once seen
+
+    /** SlidingWindowReceiver
+     *
+     * @param mode: Go-Back-N or Selective Repeat, must match the server
+     * @param windowSize: number of segments past the next expected one that may be buffered
+     * @param output: channel the response is written to as it is reassembled
+     */
+    SlidingWindowReceiver(ArqMode mode, int windowSize, WritableByteChannel output) {
+        this(mode, windowSize, new WritableByteChannel[]{output});
+    }
+
+    /** SlidingWindowReceiver
+     *
+     * @param mode: Go-Back-N or Selective Repeat, must match the server
+     * @param windowSize: number of segments past the next expected one that may be buffered
+     * @param outputs: channel for each stream of a pipelined transfer, in request order
+     */
+    SlidingWindowReceiver(ArqMode mode, int windowSize, WritableByteChannel[] outputs) {
+        this.mode = mode;
+        this.reassembler = new Reassembler(mode == ArqMode.GO_BACK_N ? 1 : windowSize, outputs);
+        //bits for every segment past the next expected one that the window can hold
+        this.selectiveAcks = new long[mode == ArqMode.GO_BACK_N ? 1
+                : Math.max(1, Math.min(Packet.MAX_SELECTIVE_ACK_WORDS, (windowSize - 1 + Long.SIZE - 1) / Long.SIZE))];
+    }
+
+    /** onData
+     * Accepts an undamaged data segment. Ownership of the packet passes to the receiver.
+     *
+     * @param packet: data segment that passed ErrorDetection
+     * @return ACK to send back to the server (caller releases it after sending)
+     * @throws IOException if writing the reassembled data fails
+     */
+    Packet onData(Packet packet) throws IOException {
+        int segment = packet.getSegmentNumber();
+        boolean last = packet.isLastSegment();
+        //Go-Back-N keeps a one slot window, so anything but the next expected segment is dropped
+        if (reassembler.accept(packet) && last)
+            lastSegment = segment;
+        return Packet.createControl(Packet.TYPE_ACK, reassembler.getExpected(), selectiveAcks, selectiveAckWords());
+    }
+
+    /** onCorrupt
+     * Drops a segment that failed ErrorDetection. The checksum covers the header, so the damage may be
+     * in the segment number itself: it is only NAKed if it names a segment the window is still waiting
+     * for, and any other damaged segment is dropped without a reply, leaving it to the ACKs that follow.
+     *
+     * @param packet: damaged data segment, released here
+     * @return NAK asking the server to resend the segment (caller releases it after sending), or null
+     */
+    Packet onCorrupt(Packet packet) {
+        int segment = packet.getSegmentNumber();
+        packet.release();
+        return reassembler.isAwaited(segment) ? Packet.createControl(Packet.TYPE_NAK, segment, 0) : null;
+    }
+
+    /** isComplete
+     * @return true once the last segment and everything before it has arrived
+     */
+    boolean isComplete() {
+        return lastSegment >= 0 && reassembler.getExpected() > lastSegment;
+    }
+
+    /** getBytesReceived
+     * @return number of response bytes written to the output so far
+     */
+    long getBytesReceived() {
+        return reassembler.getBytesWritten();
+    }
+
+    /** close
+     * Releases any segments still buffered out of order
+     */
+    void close() {
+        reassembler.close();
+    }
+
+    //Fills selectiveAcks, bit i set meaning segment expected + 1 + i is already buffered, up to the highest
+    //segment received, and returns the number of words in use
+    private int selectiveAckWords() {
+        int span = 0;
+        if (mode == ArqMode.SELECTIVE_REPEAT)
+            span = Math.min(selectiveAcks.length * Long.SIZE, reassembler.getEnd() - reassembler.getExpected() - 1);
+        int words = Math.max(1, (span + Long.SIZE - 1) / Long.SIZE);
+        Arrays.fill(selectiveAcks, 0, words, 0);
+        int expected = reassembler.getExpected();
+        for (int i = 0; i < span; i++) {
+            if (reassembler.isBuffered(expected + 1 + i))
+                selectiveAcks[i / Long.SIZE] |= 1L << i;    //shifts by i % 64
+        }
+        return words;
+    }
+}
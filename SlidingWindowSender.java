@@ -0,0 +1,519 @@
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+
+/** SlidingWindowSender Class
+ * Sender half of the windowed ARQ transfer. Keeps up to windowSize unacknowledged segments in flight,
+ * processes cumulative/selective ACKs and NAKs from the client, and retransmits on timeout using
+ * either Go-Back-N or Selective Repeat.
+ *
+ * Segments are pulled from the source only when the window has room and are released as soon as
+ * they are acknowledged, so memory is bounded by the window rather than the file.
+ *
+ * How much of the window may be used is decided by a CongestionControl, and the retransmission
+ * timeout follows the measured round trip time through an RttEstimator instead of being fixed.
+ * A segment is taken as lost by the network after DUPLICATE_ACK_THRESHOLD ACKs that do not move
+ * the window, and is resent straight away without waiting for its timer. In Selective Repeat mode the
+ * selective ack bits cover the whole window, so any segment with DUPLICATE_ACK_THRESHOLD segments
+ * selectively acknowledged above it is taken as lost the same way (RFC 6675), not only the oldest.
+ *
+ * With an FecEncoder, every new segment is also added to the encoder and its parity segments are
+ * sent as soon as they are ready. Parity is paced like data but does not use the window and is
+ * never retransmitted.
+ *
+ * Once every segment is acknowledged the sender closes the session with a FIN, resent each
+ * retransmission timeout until the client answers with a FIN-ACK or FIN_ATTEMPTS go unanswered.
+ * The client can then stop listening as soon as the FIN arrives instead of waiting out a timer.
+ *
+ * Every segment sent, retransmission and round trip sample is also counted in a TransferMetrics
+ * shared by all sessions, which also counts the session itself from construction until close().
+ *
+ * The window bookkeeping does not touch a socket so it can be driven by the blocking transfer()
+ * loop below or by another event loop.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class SlidingWindowSender {
+
+    static final int DEFAULT_WINDOW_SIZE = 32;
+    static final int MAX_WINDOW_SIZE = 1024;
+    static final long DEFAULT_RETRANSMIT_TIMEOUT_MS = 100;  //used until the first round trip is measured
+    //how long the client may stay silent before the transfer is abandoned
+    static final long CLIENT_IDLE_TIMEOUT_MS = 5000;
+    static final int DUPLICATE_ACK_THRESHOLD = 3;
+    static final int FIN_ATTEMPTS = 4;     //FINs sent before the session ends without a FIN-ACK
+
+    private final Iterator<Packet> source;
+    private final ArqMode mode;
+    private final int windowSize;
+    private final CongestionControl congestionControl;
+    private final RttEstimator rtt;
+    private final FecEncoder fec;
+    private final TransferMetrics metrics;
+    //parity segment or FIN handed out by the last call to nextToSend, released on the next; neither is kept for resending
+    private Packet sentControl;
+
+    private int base;           //oldest segment not yet acknowledged
+    private int nextSegment;    //next segment that has never been sent
+    private int resendCursor;   //where the scan for segments marked for resend continues
+    private int duplicateAcks;  //ACKs in a row that did not move base
+    private int recoveryPoint;  //losses of segments before this were already reported to congestion control
+    //per slot state, indexed by segment % windowSize
+    private final Packet[] inFlight;
+    private final long[] sentAt;
+    private final boolean[] acked;
+    private final boolean[] needsResend;
+    private final boolean[] retransmitted;
+    private int retransmissions;
+    private long bytesSent;
+    private long firstSentAt;
+    private long lastAckedAt;   //when the last new data was acknowledged
+    private int finsSent;
+    private long finSentAt;
+    private boolean finished;   //the client answered the FIN, or FIN_ATTEMPTS went unanswered
+    private boolean closed;
+
+    /** SlidingWindowSender
+     *
+     * @param source: packets to deliver, in segment number order; the sender releases them once acknowledged
+     * @param mode: Go-Back-N or Selective Repeat
+     * @param windowSize: maximum number of unacknowledged segments in flight
+     * @param retransmitTimeoutMs: how long a segment may go unacknowledged before it is resent, until the
+     *                           round trip time has been measured
+     * @param congestionControl: decides how much of the window may be used; never more than windowSize
+     * @param fec: adds parity segments to the stream, or null for none
+     * @param metrics: counters the transfer is added to
+     */
+    SlidingWindowSender(Iterator<Packet> source, ArqMode mode, int windowSize, long retransmitTimeoutMs,
+                        CongestionControl congestionControl, FecEncoder fec, TransferMetrics metrics) {
+        if (windowSize < 1 || windowSize > MAX_WINDOW_SIZE)
+            throw new IllegalArgumentException("Window size must be between 1 and " + MAX_WINDOW_SIZE + ": " + windowSize);
+        this.source = source;
+        this.mode = mode;
+        this.windowSize = windowSize;
+        this.congestionControl = congestionControl;
+        this.rtt = new RttEstimator(retransmitTimeoutMs);
+        this.fec = fec;
+        this.metrics = metrics;
+        inFlight = new Packet[windowSize];
+        sentAt = new long[windowSize];
+        acked = new boolean[windowSize];
+        needsResend = new boolean[windowSize];
+        retransmitted = new boolean[windowSize];
+        metrics.onSessionStarted();
+    }
+
+    /** isDelivered
+     * @return true once every segment has been acknowledged
+     */
+    boolean isDelivered() {
+        return base >= nextSegment && !source.hasNext();
+    }
+
+    /** isComplete
+     * @return true once every segment has been acknowledged and the FIN exchange is over
+     */
+    boolean isComplete() {
+        return finished && isDelivered();
+    }
+
+    /** getSegmentsSent
+     * @return number of distinct segments taken from the source so far
+     */
+    int getSegmentsSent() {
+        return nextSegment;
+    }
+
+    /** close
+     * Releases any segments still in flight, for when a transfer finishes or is abandoned
+     */
+    void close() {
+        if (!closed)
+            metrics.onSessionEnded(isDelivered());
+        closed = true;
+        for (int segment = base; segment < nextSegment; segment++) clearSlot(segment);
+        base = nextSegment;
+        releaseSentControl();
+        if (fec != null)
+            fec.close();
+    }
+
+    /** getRetransmissions
+     * @return number of segments sent more than once
+     */
+    int getRetransmissions() {
+        return retransmissions;
+    }
+
+    /** getBytesSent
+     * @return bytes put on the wire so far, headers, parity and retransmissions included
+     */
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    /** getElapsedNanos
+     * @return time from the first segment sent to the last new data acknowledged
+     */
+    long getElapsedNanos() {
+        return firstSentAt == 0 ? 0 : lastAckedAt - firstSentAt;
+    }
+
+    /** getCongestionControl
+     * @return controller deciding the usable window
+     */
+    CongestionControl getCongestionControl() {
+        return congestionControl;
+    }
+
+    /** getRttEstimator
+     * @return measured round trip time and current retransmission timeout
+     */
+    RttEstimator getRttEstimator() {
+        return rtt;
+    }
+
+    /** getFecEncoder
+     * @return parity encoder, or null when the transfer has no FEC
+     */
+    FecEncoder getFecEncoder() {
+        return fec;
+    }
+
+    /** nextToSend
+     * Picks the next segment to put on the wire: first anything marked for resend, then a new
+     * segment if the congestion window has room. The caller must send the returned packet immediately.
+     *
+     * @param now: current System.nanoTime()
+     * @return packet to send, or null if nothing can be sent right now
+     */
+    Packet nextToSend(long now) {
+        int retransmitted = retransmissions;
+        Packet next = pickNextToSend(now);
+        if (next != null) {
+            if (firstSentAt == 0)
+                firstSentAt = now;
+            int bytes = Packet.HEADER_SIZE + next.getPacketDataSize();
+            bytesSent += bytes;
+            metrics.onSegmentSent(bytes, retransmissions != retransmitted);
+        }
+        return next;
+    }
+
+    //Parity first, then resends, then new segments as the window allows, and the FIN once everything is acknowledged
+    private Packet pickNextToSend(long now) {
+        releaseSentControl();
+        if (isDelivered())
+            return nextFin(now);
+        markExpired(now);
+        if (now < congestionControl.getNextSendTime())
+            return null;    //paced, not this segment's turn yet
+        if (fec != null && fec.hasParity()) {
+            sentControl = fec.nextParity();
+            congestionControl.onSend(now);
+            return sentControl;
+        }
+        for (int segment = Math.max(resendCursor, base); segment < nextSegment; segment++) {
+            int slot = segment % windowSize;
+            if (needsResend[slot]) {
+                needsResend[slot] = false;
+                retransmitted[slot] = true;
+                sentAt[slot] = now;
+                resendCursor = segment + 1;
+                retransmissions++;
+                congestionControl.onSend(now);
+                return inFlight[slot];
+            }
+        }
+        resendCursor = nextSegment;
+        if (hasWindowRoom()) {
+            int slot = nextSegment % windowSize;
+            inFlight[slot] = source.next();
+            sentAt[slot] = now;
+            acked[slot] = false;
+            needsResend[slot] = false;
+            retransmitted[slot] = false;
+            resendCursor = nextSegment + 1;
+            congestionControl.onSend(now);
+            if (fec != null)
+                fec.add(inFlight[slot]);
+            return inFlight[nextSegment++ % windowSize];
+        }
+        return null;
+    }
+
+    //The FIN, the first time straight away and again each retransmission timeout until FIN_ATTEMPTS have been sent
+    private Packet nextFin(long now) {
+        if (finished || (finsSent > 0 && now - finSentAt < rtt.getRetransmitTimeout()))
+            return null;
+        if (finsSent == FIN_ATTEMPTS) {
+            finished = true;    //the client has everything, it just did not say goodbye
+            return null;
+        }
+        if (finsSent > 0)
+            rtt.backoff();
+        finsSent++;
+        finSentAt = now;
+        sentControl = Packet.createControl(Packet.TYPE_FIN, nextSegment, 0);
+        return sentControl;
+    }
+
+    /** nextDeadline
+     * @return System.nanoTime() at which the earliest outstanding segment or the FIN times out, or
+     *         sooner if a segment is ready and only waiting for the pacer
+     */
+    long nextDeadline() {
+        long retransmitTimeout = rtt.getRetransmitTimeout();
+        if (isDelivered())
+            return finsSent == 0 ? 0 : finSentAt + (finished ? 0 : retransmitTimeout);
+        long deadline = Long.MAX_VALUE;
+        if (mode == ArqMode.GO_BACK_N || base >= nextSegment) {
+            deadline = sentAt[base % windowSize] + retransmitTimeout;
+        } else {
+            for (int segment = base; segment < nextSegment; segment++) {
+                int slot = segment % windowSize;
+                if (!acked[slot])
+                    deadline = Math.min(deadline, sentAt[slot] + retransmitTimeout);
+            }
+        }
+        if (hasWindowRoom() || hasResendPending() || (fec != null && fec.hasParity()))
+            deadline = Math.min(deadline, congestionControl.getNextSendTime());
+        return deadline;
+    }
+
+    /** onAck
+     * Applies an ACK, NAK or FIN-ACK received from the client
+     *
+     * @param reply: control packet from the client
+     * @return true if the reply acknowledged new data
+     */
+    boolean onAck(Packet reply) {
+        if (!reply.isCheckSumValid())
+            return false;   //damaged on the way, so its selective ack bits cannot be trusted
+        long now = System.nanoTime();
+        int segment = reply.getSegmentNumber();
+        if (reply.getType() == Packet.TYPE_FIN_ACK) {
+            if (finsSent > 0 && segment == nextSegment)
+                finished = true;
+            return false;
+        }
+        if (reply.getType() == Packet.TYPE_NAK) {
+            if (segment >= base && segment < nextSegment) {
+                if (mode == ArqMode.GO_BACK_N)
+                    markForResend(segment, nextSegment);
+                else
+                    markForResend(segment, segment + 1);
+            }
+            return false;
+        }
+        if (reply.getType() != Packet.TYPE_ACK)
+            return false;
+
+        int oldBase = base;
+        int newlyAcked = 0;
+        long latestSentAt = Long.MIN_VALUE;     //newest segment sent only once that this ACK covers, for an RTT sample
+        //cumulative part: everything before segment has arrived
+        while (base < segment && base < nextSegment) {
+            int slot = base % windowSize;
+            if (!acked[slot]) {
+                newlyAcked++;
+                if (!retransmitted[slot])
+                    latestSentAt = Math.max(latestSentAt, sentAt[slot]);
+            }
+            clearSlot(base++);
+        }
+        //selective part: bit i of word w covers segment + 1 + 64 * w + i
+        int highestSacked = -1;
+        if (mode == ArqMode.SELECTIVE_REPEAT) {
+            for (int word = 0; word < reply.getSelectiveAckWords(); word++) {
+                long selectiveAcks = reply.getSelectiveAcks(word);
+                for (int i = 0; selectiveAcks != 0 && i < Long.SIZE; i++, selectiveAcks >>>= 1) {
+                    int acknowledged = segment + 1 + word * Long.SIZE + i;
+                    int slot = acknowledged % windowSize;
+                    if ((selectiveAcks & 1) == 0 || acknowledged < base || acknowledged >= nextSegment)
+                        continue;
+                    highestSacked = acknowledged;
+                    if (!acked[slot]) {
+                        acked[slot] = true;
+                        newlyAcked++;
+                        if (!retransmitted[slot])
+                            latestSentAt = Math.max(latestSentAt, sentAt[slot]);
+                    }
+                }
+            }
+            while (base < nextSegment && acked[base % windowSize])
+                clearSlot(base++);
+            if (highestSacked > base)
+                markSackedHoles(highestSacked, now);
+        }
+        if (latestSentAt != Long.MIN_VALUE) {
+            rtt.onSample(now - latestSentAt);
+            metrics.onSegmentLatency(now - latestSentAt);
+        }
+        if (newlyAcked > 0)
+            lastAckedAt = now;
+        if (newlyAcked > 0)
+            congestionControl.onAck(newlyAcked, rtt, now);
+
+        if (base > oldBase) {
+            duplicateAcks = 0;
+        } else if (base < nextSegment && ++duplicateAcks == DUPLICATE_ACK_THRESHOLD && mode == ArqMode.GO_BACK_N) {
+            //the client keeps asking for base, so it was lost: resend it without waiting for the timer.
+            //Selective Repeat finds it, and any later hole, from the selective ack bits instead.
+            markForResend(base, nextSegment);
+            onCongestion(now, false);
+        }
+        return base > oldBase;
+    }
+
+    /** transfer
+     * Blocking driver: sends the segments to the client over socket and waits for ACKs until
+     * every segment is acknowledged and the FIN exchange is over. Datagrams from other addresses are ignored.
+     *
+     * @param socket: socket to send on and receive ACKs from
+     * @param address: IP Address of Client
+     * @param port: Port of Client
+     * @throws IOException if the client stops responding
+     */
+    void transfer(DatagramSocket socket, InetAddress address, int port) throws IOException {
+        int originalTimeout = socket.getSoTimeout();
+        long lastHeard = System.nanoTime();
+        try {
+            while (!isComplete()) {
+                Packet next;
+                while ((next = nextToSend(System.nanoTime())) != null)
+                    socket.send(next.getDatagramPacket(address, port));
+
+                long waitMillis = (nextDeadline() - System.nanoTime()) / 1_000_000L;
+                socket.setSoTimeout((int) Math.max(1, Math.min(waitMillis, Integer.MAX_VALUE)));
+                Packet reply;
+                try {
+                    reply = Packet.receive(socket);
+                } catch (SocketTimeoutException e) {
+                    if (System.nanoTime() - lastHeard > CLIENT_IDLE_TIMEOUT_MS * 1_000_000L) {
+                        if (isDelivered())
+                            return;     //only the FIN went unanswered
+                        throw new IOException("Client stopped acknowledging after " + base + " segments");
+                    }
+                    continue;
+                }
+                if (reply.getAddress().equals(address) && reply.getPort() == port) {
+                    onAck(reply);
+                    lastHeard = System.nanoTime();
+                }
+                reply.release();
+            }
+        } finally {
+            socket.setSoTimeout(originalTimeout);
+        }
+    }
+
+    //Marks segments whose timer ran out: the whole window for Go-Back-N, each late segment for Selective Repeat
+    private void markExpired(long now) {
+        if (base >= nextSegment)
+            return;
+        long retransmitTimeout = rtt.getRetransmitTimeout();
+        boolean expired = false;
+        boolean expiredAgain = false;   //a retransmission timed out too, so the timeout is too short
+        if (mode == ArqMode.GO_BACK_N) {
+            int slot = base % windowSize;
+            if (!needsResend[slot] && now - sentAt[slot] >= retransmitTimeout) {
+                markForResend(base, nextSegment);
+                expired = true;
+                expiredAgain = retransmitted[slot];
+            }
+        } else {
+            for (int segment = base; segment < nextSegment; segment++) {
+                int slot = segment % windowSize;
+                if (!acked[slot] && !needsResend[slot] && now - sentAt[slot] >= retransmitTimeout) {
+                    needsResend[slot] = true;
+                    resendCursor = Math.min(resendCursor, segment);
+                    expired = true;
+                    expiredAgain |= retransmitted[slot];
+                }
+            }
+        }
+        if (expired && (onCongestion(now, true) || expiredAgain))
+            rtt.backoff();
+    }
+
+    //Selective Repeat: marks every segment below highestSacked with DUPLICATE_ACK_THRESHOLD selectively
+    //acknowledged segments above it as lost, unless it was already resent; a lost retransmission is left to its timer
+    private void markSackedHoles(int highestSacked, long now) {
+        int sackedAbove = 0;
+        boolean lost = false;
+        for (int segment = highestSacked; segment >= base; segment--) {
+            int slot = segment % windowSize;
+            if (acked[slot]) {
+                sackedAbove++;
+            } else if (sackedAbove >= DUPLICATE_ACK_THRESHOLD && !needsResend[slot] && !retransmitted[slot]) {
+                needsResend[slot] = true;
+                resendCursor = Math.min(resendCursor, segment);
+                lost = true;
+            }
+        }
+        if (lost)
+            onCongestion(now, false);
+    }
+
+    //Reports a loss or timeout to congestion control, once per window of data
+    private boolean onCongestion(long now, boolean timeout) {
+        if (base < recoveryPoint)
+            return false;   //already reacted to a loss in this window
+        recoveryPoint = nextSegment;
+        if (timeout)
+            congestionControl.onTimeout(now);
+        else
+            congestionControl.onLoss(now);
+        return true;
+    }
+
+    //True if a new segment may be taken from the source. Each of the first two duplicate ACKs lets one
+    //more segment out (limited transmit, RFC 3042) so a small window still gets enough duplicates to
+    //recover without a timeout.
+    private boolean hasWindowRoom() {
+        int window = congestionControl.getWindow() + Math.min(duplicateAcks, DUPLICATE_ACK_THRESHOLD - 1);
+        return nextSegment < base + Math.min(windowSize, window) && source.hasNext();
+    }
+
+    //True if a segment is waiting to be resent
+    private boolean hasResendPending() {
+        for (int segment = Math.max(resendCursor, base); segment < nextSegment; segment++) {
+            if (needsResend[segment % windowSize])
+                return true;
+        }
+        return false;
+    }
+
+    //Marks segments from (inclusive) to (exclusive) for retransmission
+    private void markForResend(int from, int to) {
+        for (int segment = from; segment < to; segment++) {
+            int slot = segment % windowSize;
+            if (!acked[slot])
+                needsResend[slot] = true;
+        }
+        resendCursor = Math.min(resendCursor, from);
+    }
+
+    //Parity is not kept for retransmission, so it goes back to the pool once the caller has sent it
+    private void releaseSentControl() {
+        if (sentControl != null) {
+            sentControl.release();
+            sentControl = null;
+        }
+    }
+
+    //Frees the slot of an acknowledged segment and hands its packet back to the pool
+    private void clearSlot(int segment) {
+        int slot = segment % windowSize;
+        if (inFlight[slot] != null) {
+            inFlight[slot].release();
+            inFlight[slot] = null;
+        }
+        acked[slot] = false;
+        needsResend[slot] = false;
+    }
+}
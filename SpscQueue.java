@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/** SpscQueue Class
+ * Bounded lock free queue for exactly one producer thread and one consumer thread. Elements sit in a
+ * power of two ring; the producer only writes tail and the consumer only writes head, each published
+ * with an ordered store, and each side keeps a cached copy of the other's index so it only reads the
+ * shared one when the ring looks full or empty. Nothing is allocated after construction.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class SpscQueue<E> {
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();   //next slot to take, written by the consumer
+    private final AtomicLong tail = new AtomicLong();   //next slot to fill, written by the producer
+    private long producerHead;      //producer's last look at head
+    private long consumerTail;      //consumer's last look at tail
+
+    /** SpscQueue
+     *
+     * @param capacity: most elements held at once, rounded up to a power of two
+     */
+    SpscQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Bad queue capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Object[Math.max(1, size)];
+        this.mask = slots.length - 1;
+    }
+
+    /** offer
+     * Adds an element; producer thread only
+     *
+     * @param element: element to add, not null
+     * @return false if the queue is full
+     */
+    boolean offer(E element) {
+        long t = tail.get();
+        if (t - producerHead == slots.length) {
+            producerHead = head.get();
+            if (t - producerHead == slots.length)
+                return false;
+        }
+        slots[(int) t & mask] = element;
+        tail.lazySet(t + 1);    //publishes the element
+        return true;
+    }
+
+    /** poll
+     * Removes the oldest element; consumer thread only
+     *
+     * @return oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long h = head.get();
+        if (h == consumerTail) {
+            consumerTail = tail.get();
+            if (h == consumerTail)
+                return null;
+        }
+        int slot = (int) h & mask;
+        E element = (E) slots[slot];
+        slots[slot] = null;
+        head.lazySet(h + 1);    //hands the slot back to the producer
+        return element;
+    }
+
+    /** capacity
+     * @return most elements held at once
+     */
+    int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** StreamMultiplexer Class
+ * Sends the responses to several pipelined requests as one transfer. Response i becomes stream i:
+ * segments are taken from the responses in turn, one each, so small files finish together instead
+ * of queueing behind a large one. Every segment is renumbered into the transfer's own sequence, so
+ * the sliding window, congestion control and FEC work across all the streams exactly as they do for
+ * a single response; the stream id in the header tells the client which response it belongs to.
+ *
+ * The last segment of each response carries Packet.FLAG_END_STREAM and the last segment of the
+ * whole transfer also carries Packet.FLAG_LAST.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class StreamMultiplexer implements Iterator<Packet> {
+
+    private final ArrayDeque<Stream> active = new ArrayDeque<>();
+    private int segmentNumber;
+
+    /** StreamMultiplexer
+     *
+     * @param responses: segments of each response, in request order
+     */
+    StreamMultiplexer(List<Iterator<Packet>> responses) {
+        if (responses.size() > Packet.MAX_STREAM_ID + 1)
+            throw new IllegalArgumentException("Too many streams: " + responses.size());
+        for (int id = 0; id < responses.size(); id++) {
+            if (responses.get(id).hasNext())
+                active.addLast(new Stream(id, responses.get(id)));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !active.isEmpty();
+    }
+
+    /** next
+     * @return the next segment of the next stream in turn, owned by the caller until released
+     */
+    @Override
+    public Packet next() {
+        Stream stream = active.pollFirst();
+        if (stream == null)
+            throw new NoSuchElementException();
+        Packet packet = stream.segments.next();
+        byte flags = 0;
+        if (stream.segments.hasNext())
+            active.addLast(stream);
+        else
+            flags |= Packet.FLAG_END_STREAM;
+        if (active.isEmpty())
+            flags |= Packet.FLAG_LAST;
+        packet.restamp(segmentNumber++, stream.id, flags);
+        return packet;
+    }
+
+    /** Stream Class
+     * One response and the id its segments carry
+     */
+    private static class Stream {
+        final int id;
+        final Iterator<Packet> segments;
+
+        Stream(int id, Iterator<Packet> segments) {
+            this.id = id;
+            this.segments = segments;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** TransferBenchmark Class
+ * End to end benchmark: runs an embedded UDPServer on loopback and downloads random files of each
+ * size through an embedded NetworkEmulator for each impairment profile, checking every download
+ * byte for byte. For each case it prints completion time percentiles (request sent to last segment
+ * received) and throughput, writes them to a CSV file and, given the CSV of an earlier run, fails
+ * any case that got slower by more than maxRegressionPercent, so a change that hurts a profile is
+ * caught before it ships. Exits with 1 if a case regressed or a download failed.
+ * Run using java TransferBenchmark [transfersPerCase] [fileSizesKB] [profiles] [blocking|nio]
+ *                                  [resultsCsv] [baselineCsv] [maxRegressionPercent]
+ * e.g. java TransferBenchmark 20 16,256,4096 clean,lossy nio results.csv baseline.csv 15
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public class TransferBenchmark {
+
+    private static final String CSV_HEADER = "engine,profile,sizeKB,transfers,failures,p50Ms,p90Ms,p99Ms,maxMs,MBps";
+    private static final int WINDOW_SIZE = 64;
+    private static final long LINGER_MS = 20;   //short, since every transfer waits it out after completing
+
+    //impairment applied in both directions by each profile, clean still crossing the emulator so every
+    //profile pays the same forwarding cost
+    private static final Map<String, NetworkEmulator.Impairment> PROFILES = new LinkedHashMap<>();
+    static {
+        PROFILES.put("clean", new NetworkEmulator.Impairment(0.0, 0, 0, 200_000, 1024, 0.0, 0.0, 0.0));
+        PROFILES.put("lossy", new NetworkEmulator.Impairment(0.02, 1, 0, 200_000, 1024, 0.0, 0.0, 0.0));
+        PROFILES.put("delayed", new NetworkEmulator.Impairment(0.0, 10, 2, 200_000, 1024, 0.0, 0.0, 0.0));
+        PROFILES.put("reordered", new NetworkEmulator.Impairment(0.0, 1, 0, 200_000, 1024, 0.05, 0.0, 0.0));
+        PROFILES.put("duplicated", new NetworkEmulator.Impairment(0.0, 1, 0, 200_000, 1024, 0.0, 0.05, 0.0));
+        PROFILES.put("corrupted", new NetworkEmulator.Impairment(0.0, 1, 0, 200_000, 1024, 0.0, 0.0, 0.02));
+    }
+
+    public static void main(String args[]) throws Exception {
+        int transfersPerCase = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        String[] sizes = (args.length > 1 ? args[1] : "16,256,4096").split(",");
+        String[] profiles = (args.length > 2 ? args[2] : String.join(",", PROFILES.keySet())).split(",");
+        String engine = args.length > 3 ? args[3] : "blocking";
+        File resultsCsv = new File(args.length > 4 ? args[4] : "benchmark.csv");
+        File baselineCsv = args.length > 5 ? new File(args[5]) : null;
+        double maxRegressionPercent = args.length > 6 ? Double.parseDouble(args[6]) : 10.0;
+        for (String profile : profiles) {
+            if (!PROFILES.containsKey(profile))
+                throw new IllegalArgumentException("Unknown profile: " + profile + " (expected one of " + PROFILES.keySet() + ")");
+        }
+
+        //random content so the server cannot deflate it and a misplaced segment always shows
+        Random random = new Random(4320);
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        List<File> served = new ArrayList<>();
+        for (String size : sizes) {
+            byte[] content = new byte[Integer.parseInt(size.trim()) << 10];
+            random.nextBytes(content);
+            File file = File.createTempFile("bench" + size.trim() + "k", ".bin");
+            file.deleteOnExit();
+            Files.write(file.toPath(), content);
+            served.add(file);
+            contents.put(file.getAbsolutePath(), content);
+        }
+
+        //the server and client print a few lines per transfer, which would swamp the results
+        PrintStream console = System.out;
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        List<String> results = new ArrayList<>();
+        int failures = 0;
+        console.printf("%-8s %-11s %8s %6s %10s %10s %10s %10s %10s%n", "engine", "profile", "KB", "fails",
+                "p50 ms", "p90 ms", "p99 ms", "max ms", "MB/s");
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try (UDPServer server = new UDPServer(loopback, new int[]{0}, ArqMode.SELECTIVE_REPEAT, WINDOW_SIZE,
+                UDPServer.DEFAULT_MAX_SESSIONS, engine, CongestionControl.DEFAULT_NAME, ResponseCache.DEFAULT_CAPACITY_BYTES)) {
+            server.start();
+            InetSocketAddress requests = new InetSocketAddress(loopback, server.getPorts()[0]);
+            for (String profile : profiles) {
+                NetworkEmulator.Impairment impairment = PROFILES.get(profile);
+                try (NetworkEmulator emulator = new NetworkEmulator(0, requests, impairment, impairment, 4320)) {
+                    emulator.start();
+                    UDPClient client = new UDPClient(loopback, new int[]{emulator.getPort()}, ArqMode.SELECTIVE_REPEAT,
+                            WINDOW_SIZE, Packet.ETHERNET_PACKET_SIZE, FecEncoder.OFF, ReceiveEngine.DEFAULT_RECEIVE_BUFFER_BYTES);
+                    client.setLinger(LINGER_MS);
+                    for (Map.Entry<String, byte[]> file : contents.entrySet()) {
+                        LatencyHistogram completion = new LatencyHistogram();
+                        int caseFailures = 0;
+                        download(client, file.getKey(), file.getValue());  //warms up the JIT and the response cache
+                        for (int i = 0; i < transfersPerCase; i++) {
+                            long nanos = download(client, file.getKey(), file.getValue());
+                            if (nanos > 0)
+                                completion.record(nanos);
+                            else
+                                caseFailures++;
+                        }
+                        failures += caseFailures;
+                        int sizeKB = file.getValue().length >> 10;
+                        double megabytesPerSecond = completion.getCount() == 0 ? 0
+                                : file.getValue().length / (completion.getMean() / 1e9) / 1e6;
+                        String result = String.format("%s,%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.2f", engine, profile, sizeKB,
+                                transfersPerCase, caseFailures, completion.getValueAtPercentile(50) / 1e6,
+                                completion.getValueAtPercentile(90) / 1e6, completion.getValueAtPercentile(99) / 1e6,
+                                completion.getMax() / 1e6, megabytesPerSecond);
+                        results.add(result);
+                        String[] fields = result.split(",");
+                        console.printf("%-8s %-11s %8s %6s %10s %10s %10s %10s %10s%n", (Object[]) removeColumn(fields, 3));
+                    }
+                    console.println(emulator);
+                }
+            }
+        } finally {
+            System.setOut(console);
+            for (File file : served) file.delete();
+        }
+
+        try (PrintWriter csv = new PrintWriter(resultsCsv, "US-ASCII")) {
+            csv.println(CSV_HEADER);
+            for (String result : results) csv.println(result);
+        }
+        console.println("Results written to " + resultsCsv);
+
+        int regressions = baselineCsv == null ? 0 : compare(readCsv(baselineCsv), results, maxRegressionPercent);
+        if (failures > 0)
+            console.println(failures + " downloads failed");
+        if (regressions > 0 || failures > 0)
+            System.exit(1);
+    }
+
+    /** download
+     * Fetches one file and checks it against what the server holds
+     *
+     * @param client: client to download with
+     * @param fileName: absolute path the server reads the file from
+     * @param expected: the file's content
+     * @return completion time in nanoseconds, or 0 if the download failed or came back different
+     */
+    private static long download(UDPClient client, String fileName, byte[] expected) throws InterruptedException {
+        try {
+            UDPClient.FileRequest file = client.download(Collections.singletonList(fileName)).get(0);
+            if (!file.isFound())
+                return 0;
+            try {
+                byte[] received = Files.readAllBytes(file.getFile().toPath());
+                return Arrays.equals(received, expected) ? file.getTransferNanos() : 0;
+            } finally {
+                file.getFile().delete();
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    //Rows of a results CSV keyed by engine, profile and size, header skipped
+    private static Map<String, String[]> readCsv(File csv) throws IOException {
+        Map<String, String[]> rows = new HashMap<>();
+        for (String line : Files.readAllLines(csv.toPath())) {
+            String[] fields = line.split(",");
+            if (fields.length == CSV_HEADER.split(",").length && !line.equals(CSV_HEADER))
+                rows.put(fields[0] + "," + fields[1] + "," + fields[2], fields);
+        }
+        return rows;
+    }
+
+    /** compare
+     * Prints each case whose median completion time rose, or whose throughput fell, by more than
+     * maxRegressionPercent against the baseline
+     *
+     * @return number of cases that regressed
+     */
+    private static int compare(Map<String, String[]> baseline, List<String> results, double maxRegressionPercent) {
+        int regressions = 0;
+        for (String result : results) {
+            String[] fields = result.split(",");
+            String[] before = baseline.get(fields[0] + "," + fields[1] + "," + fields[2]);
+            if (before == null)
+                continue;
+            double p50Change = percentChange(Double.parseDouble(before[5]), Double.parseDouble(fields[5]));
+            double throughputChange = -percentChange(Double.parseDouble(before[9]), Double.parseDouble(fields[9]));
+            if (p50Change > maxRegressionPercent || throughputChange > maxRegressionPercent) {
+                regressions++;
+                System.out.printf("REGRESSION %s %s %s KB: p50 %s -> %s ms, %s -> %s MB/s%n", fields[0], fields[1],
+                        fields[2], before[5], fields[5], before[9], fields[9]);
+            }
+        }
+        System.out.println(regressions == 0 ? "No regressions against the baseline"
+                : regressions + " cases regressed by more than " + maxRegressionPercent + "%");
+        return regressions;
+    }
+
+    //How many percent larger after is than before, 0 when before is 0
+    private static double percentChange(double before, double after) {
+        return before <= 0 ? 0 : (after - before) / before * 100;
+    }
+
+    //The fields without the one at index, for printing
+    private static String[] removeColumn(String[] fields, int index) {
+        String[] remaining = new String[fields.length - 1];
+        for (int i = 0, j = 0; i < fields.length; i++) {
+            if (i != index)
+                remaining[j++] = fields[i];
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,293 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/** TransferMetrics Class
+ * Counters for every transfer in the process, replacing a console line per packet. Each counter is
+ * a LongAdder, so session threads, stripes and the receive path can all count the same event
+ * without contending on one cache line, and segment latency (send to first ACK, the same samples
+ * the RttEstimator gets) goes into a LatencyHistogram.
+ *
+ * The totals are published as a JMX MBean under "UDPFileTransfer:type=TransferMetrics,name=..."
+ * and, optionally, printed as a one line summary every few seconds with the rates and latency
+ * percentiles for that interval. Intervals in which nothing happened are not printed.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+class TransferMetrics implements TransferMetricsMBean {
+
+    static final long DEFAULT_SUMMARY_SECONDS = 10;
+    private static final String DOMAIN = "UDPFileTransfer";
+
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder segmentsSent = new LongAdder();
+    private final LongAdder retransmissions = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder segmentsReceived = new LongAdder();
+    private final LongAdder checksumFailures = new LongAdder();
+    private final LongAdder gremlinDamaged = new LongAdder();
+    private final LongAdder gremlinDropped = new LongAdder();
+    private final LongAdder segmentsRebuilt = new LongAdder();
+    private final LongAdder sessionsStarted = new LongAdder();
+    private final LongAdder sessionsCompleted = new LongAdder();
+    private final LongAdder sessionsAbandoned = new LongAdder();
+    private final LatencyHistogram segmentLatency = new LatencyHistogram();
+    private final LatencyHistogram intervalLatency = new LatencyHistogram();   //drained by each summary
+    private final long startedAt = System.nanoTime();
+    private ScheduledExecutorService summaryExecutor;
+
+    //totals at the last summary, only touched by the summary thread
+    private long lastSummaryAt = startedAt;
+    private long lastBytesSent;
+    private long lastSegmentsSent;
+    private long lastBytesReceived;
+    private long lastSegmentsReceived;
+
+    /** onSegmentSent
+     * @param bytes: datagram size, header included
+     * @param retransmission: true if the segment was sent before
+     */
+    void onSegmentSent(int bytes, boolean retransmission) {
+        bytesSent.add(bytes);
+        segmentsSent.increment();
+        if (retransmission)
+            retransmissions.increment();
+    }
+
+    /** onSegmentReceived
+     * @param bytes: datagram size, header included
+     */
+    void onSegmentReceived(int bytes) {
+        bytesReceived.add(bytes);
+        segmentsReceived.increment();
+    }
+
+    /** onSegmentLatency
+     * @param nanos: time from sending a segment to the ACK that covered it
+     */
+    void onSegmentLatency(long nanos) {
+        segmentLatency.record(nanos);
+        intervalLatency.record(nanos);
+    }
+
+    void onChecksumFailure() {
+        checksumFailures.increment();
+    }
+
+    void onGremlinDamage() {
+        gremlinDamaged.increment();
+    }
+
+    void onGremlinDrop() {
+        gremlinDropped.increment();
+    }
+
+    void onSegmentRebuilt() {
+        segmentsRebuilt.increment();
+    }
+
+    void onSessionStarted() {
+        sessionsStarted.increment();
+    }
+
+    /** onSessionEnded
+     * @param completed: true if every segment was acknowledged, false if the transfer was abandoned
+     */
+    void onSessionEnded(boolean completed) {
+        (completed ? sessionsCompleted : sessionsAbandoned).increment();
+    }
+
+    /** register
+     * Publishes the metrics on the platform MBean server; a failure is reported and otherwise ignored
+     *
+     * @param name: name key of the ObjectName, such as "server"
+     */
+    void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(this, TransferMetricsMBean.class),
+                    new ObjectName(DOMAIN + ":type=TransferMetrics,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            System.out.println("Metrics not published over JMX: " + e.getMessage());
+        }
+    }
+
+    /** startSummary
+     * Prints a summary every periodSeconds on a daemon thread
+     *
+     * @param periodSeconds: seconds between summaries, 0 for none
+     */
+    synchronized void startSummary(long periodSeconds) {
+        if (periodSeconds <= 0 || summaryExecutor != null)
+            return;
+        summaryExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-summary");
+            thread.setDaemon(true);
+            return thread;
+        });
+        summaryExecutor.scheduleAtFixedRate(() -> {
+            String summary = nextSummary();
+            if (summary != null)
+                System.out.println(summary);
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /** stopSummary
+     * Stops the periodic summary
+     */
+    synchronized void stopSummary() {
+        if (summaryExecutor != null)
+            summaryExecutor.shutdownNow();
+        summaryExecutor = null;
+    }
+
+    /** nextSummary
+     * @return rates and latency since the last summary, or null if nothing was sent or received since
+     */
+    synchronized String nextSummary() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastSummaryAt) / 1e9);
+        long sent = bytesSent.sum();
+        long sentSegments = segmentsSent.sum();
+        long received = bytesReceived.sum();
+        long receivedSegments = segmentsReceived.sum();
+        LatencyHistogram latency = intervalLatency.drain();
+        if (sentSegments == lastSegmentsSent && receivedSegments == lastSegmentsReceived) {
+            lastSummaryAt = now;
+            return null;
+        }
+        String summary = String.format("[metrics %.1f s] sent %.2f MB/s %.0f pkt/s, received %.2f MB/s %.0f pkt/s, "
+                        + "latency %s, %s",
+                seconds, (sent - lastBytesSent) / seconds / 1e6, (sentSegments - lastSegmentsSent) / seconds,
+                (received - lastBytesReceived) / seconds / 1e6, (receivedSegments - lastSegmentsReceived) / seconds,
+                latency, describeTotals());
+        lastSummaryAt = now;
+        lastBytesSent = sent;
+        lastSegmentsSent = sentSegments;
+        lastBytesReceived = received;
+        lastSegmentsReceived = receivedSegments;
+        return summary;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startedAt) / 1e9);
+        return String.format("%d segments (%.2f MB/s) sent, %d segments (%.2f MB/s) received, latency %s, %s",
+                getSegmentsSent(), getBytesSent() / seconds / 1e6, getSegmentsReceived(),
+                getBytesReceived() / seconds / 1e6, segmentLatency, describeTotals());
+    }
+
+    //Counts that are only interesting as totals
+    private String describeTotals() {
+        return String.format("%d retransmissions, %d checksum failures, Gremlin %d damaged %d dropped, %d rebuilt, "
+                        + "sessions %d active %d completed %d abandoned",
+                getRetransmissions(), getChecksumFailures(), getGremlinDamaged(), getGremlinDropped(),
+                getSegmentsRebuilt(), getActiveSessions(), getSessionsCompleted(), getSessionsAbandoned());
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getSegmentsSent() {
+        return segmentsSent.sum();
+    }
+
+    @Override
+    public long getRetransmissions() {
+        return retransmissions.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getSegmentsReceived() {
+        return segmentsReceived.sum();
+    }
+
+    @Override
+    public long getChecksumFailures() {
+        return checksumFailures.sum();
+    }
+
+    @Override
+    public long getGremlinDamaged() {
+        return gremlinDamaged.sum();
+    }
+
+    @Override
+    public long getGremlinDropped() {
+        return gremlinDropped.sum();
+    }
+
+    @Override
+    public long getSegmentsRebuilt() {
+        return segmentsRebuilt.sum();
+    }
+
+    @Override
+    public long getSessionsStarted() {
+        return sessionsStarted.sum();
+    }
+
+    @Override
+    public long getSessionsCompleted() {
+        return sessionsCompleted.sum();
+    }
+
+    @Override
+    public long getSessionsAbandoned() {
+        return sessionsAbandoned.sum();
+    }
+
+    @Override
+    public long getActiveSessions() {
+        return sessionsStarted.sum() - sessionsCompleted.sum() - sessionsAbandoned.sum();
+    }
+
+    /** getSendBytesPerSecond
+     * @return average send rate since the metrics were created
+     */
+    @Override
+    public double getSendBytesPerSecond() {
+        return getBytesSent() / Math.max(1e-9, (System.nanoTime() - startedAt) / 1e9);
+    }
+
+    /** getReceiveBytesPerSecond
+     * @return average receive rate since the metrics were created
+     */
+    @Override
+    public double getReceiveBytesPerSecond() {
+        return getBytesReceived() / Math.max(1e-9, (System.nanoTime() - startedAt) / 1e9);
+    }
+
+    @Override
+    public double getSegmentLatencyMeanMillis() {
+        return segmentLatency.getMean() / 1e6;
+    }
+
+    @Override
+    public double getSegmentLatencyP50Millis() {
+        return segmentLatency.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getSegmentLatencyP99Millis() {
+        return segmentLatency.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getSegmentLatencyMaxMillis() {
+        return segmentLatency.getMax() / 1e6;
+    }
+}
@@ -0,0 +1,48 @@
+/** TransferMetricsMBean Interface
+ * Attributes TransferMetrics publishes over JMX, so jconsole or any JMX client can watch a running
+ * server without it printing anything per packet. Public because JMX reads the attributes through
+ * this interface by reflection.
+ *
+ * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
+ * @version 7.15.18
+ */
+public interface TransferMetricsMBean {
+
+    long getBytesSent();
+
+    long getSegmentsSent();
+
+    long getRetransmissions();
+
+    long getBytesReceived();
+
+    long getSegmentsReceived();
+
+    long getChecksumFailures();
+
+    long getGremlinDamaged();
+
+    long getGremlinDropped();
+
+    long getSegmentsRebuilt();
+
+    long getSessionsStarted();
+
+    long getSessionsCompleted();
+
+    long getSessionsAbandoned();
+
+    long getActiveSessions();
+
+    double getSendBytesPerSecond();
+
+    double getReceiveBytesPerSecond();
+
+    double getSegmentLatencyMeanMillis();
+
+    double getSegmentLatencyP50Millis();
+
+    double getSegmentLatencyP99Millis();
+
+    double getSegmentLatencyMaxMillis();
+}
@@ -1,165 +1,514 @@
 import java.awt.*;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /** UDPClient Class.
  * Runs on Client machine to request HTML files from Server
- * Compile using java UDPClient <chanceOfCorruption>
+ * Compile using java UDPClient <chanceOfCorruption> [gbn|sr] [windowSize] [packetSize|probe] [k/m|off]
+ *                              [chanceOfLoss] [gremlinSeed] [receiveBufferKB] [file[:range|@stripes] ...]
+ * "probe" runs an MtuProbe first and asks for the largest packet size the path carries.
+ * "k/m" asks the server for m parity segments per k data segments, which FecDecoder uses to rebuild
+ * lost or damaged segments without a retransmission. The Gremlin is a FaultInjector on the receive
+ * path, which damages and drops packets as they arrive and can also duplicate, reorder and delay
+ * them, e.g. "-Dfaults=duplicate=0.01,reorder=0.02" (see FaultInjector.Faults.with); a seed makes its
+ * choices repeatable and "-DfaultWorkers=n" applies the faults on n threads for stress tests.
+ * Packets are taken off the socket by a ReceiveEngine thread, with a socket receive buffer of
+ * receiveBufferKB (default 4096, or a full window if larger), so bursts are not lost while
+ * packets are being checked and written.
+ * Any number of files (TestFile.html by default) are requested in one pipelined datagram and arrive
+ * as streams of one transfer, each saved to its own file. A range such as "Big.html:1000-" fetches
+ * only those bytes, for example to resume a partial download. "Big.html@4" splits the file into 4
+ * stripes fetched in parallel from the first 4 ports (the server must listen on them), each with its
+ * own socket and window, and written into one file at their offsets. Whole files are requested with
+ * "Accept-Encoding: deflate" and inflated by their ResponseWriter as they arrive.
+ * The request is resent if nothing comes back within a retransmission timeout that starts at
+ * REQUEST_TIMEOUT_MS and adapts to the round trip measured for it. Every transfer's request carries
+ * a new random Request-Id that its resends repeat, so the server can tell a late resend from a new
+ * request for the same files. A transfer ends when the server's FIN arrives, which the client
+ * answers with a FIN-ACK; a missing file comes back as a 404 response, and a transfer the server
+ * stops sending is abandoned after SERVER_IDLE_TIMEOUT_MS, so the client never waits forever.
+ * Packets received, checksum failures, Gremlin damage and drops and rebuilt segments are counted in
+ * a TransferMetrics, summarised every TransferMetrics.DEFAULT_SUMMARY_SECONDS and at the end.
+ *
+ * The client can also be embedded, for example by a benchmark: construct it with the server's
+ * address and ports and call download() as often as needed.
  *
  * Use tux050 - tux065 when running on tux,
- * Make sure to change IPADDRESSOFSERVER to the correct IP
+ * Make sure to change IPADDRESSOFSERVER to the correct IP, or run with "-Dserver=host"
  *
  * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
  * @version 7.15.18
 */
 public class UDPClient {
 
+    //how long the client waits for the server's FIN after the last segment arrives, re-acknowledging any
+    //retransmissions meanwhile; at least two request round trip timeouts on a slow path
+    static final long LINGER_MS = 500;
+    //wait for the first response segment before resending the request, until a round trip is measured
+    static final long REQUEST_TIMEOUT_MS = 1000;
+    static final int REQUEST_ATTEMPTS = 4;
+    //a transfer is abandoned when nothing arrives from the server for this long
+    static final long SERVER_IDLE_TIMEOUT_MS = SlidingWindowSender.CLIENT_IDLE_TIMEOUT_MS;
+    static final String IPADDRESSOFSERVER = "131.204.14.56";
+    //first argument that names a file to fetch
+    private static final int FILE_ARGUMENT = 8;
+
+    private final InetAddress IPAddress;
+    private final int[] ports;
+    private final ArqMode mode;
+    private final int windowSize;
+    private final int packetSize;
+    private final String fecSetting;
+    private final int receiveBuffer;
+    private final Random requestIds = new Random();     //Request-Id of each transfer
+    //the Gremlin, seeded from the command line for repeatable runs
+    private FaultInjector.Faults faults = FaultInjector.Faults.NONE;
+    private long faultSeed = new Random().nextLong();
+    private int faultWorkers;
+    private long lingerMs = LINGER_MS;
+    //counters shared by every stripe
+    private final TransferMetrics metrics = new TransferMetrics();
+
+    /** UDPClient
+     *
+     * @param IPAddress: server address
+     * @param ports: server ports; transfers go to the first, and stripe k of a striped file to ports[k]
+     * @param mode: Go-Back-N or Selective Repeat
+     * @param windowSize: receive window
+     * @param packetSize: largest datagram to ask the server for
+     * @param fecSetting: "k/m" or "off"
+     * @param receiveBuffer: socket receive buffer to ask for, in bytes
+     */
+    UDPClient(InetAddress IPAddress, int[] ports, ArqMode mode, int windowSize, int packetSize, String fecSetting,
+              int receiveBuffer) {
+        FecEncoder.parse(fecSetting);   //reject a bad setting before sending anything
+        this.IPAddress = IPAddress;
+        this.ports = ports.clone();
+        this.mode = mode;
+        this.windowSize = windowSize;
+        this.packetSize = packetSize;
+        this.fecSetting = fecSetting;
+        this.receiveBuffer = receiveBuffer;
+    }
+
     public static void main(String args[]) throws Exception {
-        final String IPADDRESSOFSERVER = "131.204.14.56";
-        int[] ports = {10028, 10029, 10030, 10031}; //Group Assigned Port Numbers
+        int[] ports = UDPServer.GROUP_PORTS; //Group Assigned Port Numbers
         int port = ports[0];
 
-        DatagramSocket clientSocket = new DatagramSocket();        //creates socket for user
-        InetAddress IPAddress = InetAddress.getByName(IPADDRESSOFSERVER);    //gets IP address of Server
+        //gets IP address of Server, which "-Dserver=host" overrides
+        InetAddress IPAddress = InetAddress.getByName(System.getProperty("server", IPADDRESSOFSERVER));
 
-        byte[] sendData;    //creates packet to be sent
-        byte[] receiveData = new byte[256]; //creates packet to be received
         String GremlinProbability = "0.0";
-        boolean DataDoneSending = false;
-        int packetNumber = 0;
 
-        // ********** SENDING DATA **********
-        String TestFile = "GET TestFile.html HTTP/1.0"; //request to be sent to Server
-        sendData = TestFile.getBytes(); //gets request in byte form
+        //use command line arguments to detect Gremlin probability, ARQ mode and window size
+        if (args.length == 0) {
+            System.out.println("There are no arguments detected for Gremlin Probability");
+        } else {
+            //if there is arguments then set the Gremlin Probability to these
+            GremlinProbability = args[0];
+        }
+        ArqMode mode = args.length > 1 ? ArqMode.parse(args[1]) : ArqMode.SELECTIVE_REPEAT;
+        int windowSize = args.length > 2 ? Integer.parseInt(args[2]) : SlidingWindowSender.DEFAULT_WINDOW_SIZE;
+        int packetSize = Packet.DEFAULT_PACKET_SIZE;
+        if (args.length > 3 && args[3].equalsIgnoreCase("probe")) {
+            try (DatagramSocket probeSocket = new DatagramSocket()) {
+                packetSize = MtuProbe.discover(probeSocket, IPAddress, port);
+            }
+            System.out.println("Path carries " + packetSize + " byte packets");
+        } else if (args.length > 3) {
+            packetSize = Math.max(Packet.MIN_PACKET_SIZE, Math.min(Packet.MAX_PACKET_SIZE, Integer.parseInt(args[3])));
+        }
+        String fecSetting = args.length > 4 ? args[4] : FecEncoder.OFF;
+        double lossProbability = args.length > 5 ? Double.parseDouble(args[5]) : 0.0;
+        long gremlinSeed = args.length > 6 ? Long.parseLong(args[6]) : new Random().nextLong();
+        int receiveBuffer = args.length > 7 ? Integer.parseInt(args[7]) << 10 : ReceiveEngine.DEFAULT_RECEIVE_BUFFER_BYTES;
+        List<String> fileArguments = new ArrayList<>();
+        for (int i = FILE_ARGUMENT; i < args.length; i++) fileArguments.add(args[i]);
+        if (fileArguments.isEmpty())
+            fileArguments.add("TestFile.html");
+
+        UDPClient client = new UDPClient(IPAddress, ports, mode, windowSize, packetSize, fecSetting, receiveBuffer);
+        client.setFaults(FaultInjector.Faults.gremlin(Double.parseDouble(GremlinProbability), lossProbability)
+                .with(System.getProperty("faults", "")), gremlinSeed, Integer.getInteger("faultWorkers", 0));
+        client.getMetrics().startSummary(TransferMetrics.DEFAULT_SUMMARY_SECONDS);
+        List<FileRequest> files = client.download(fileArguments);
+        client.getMetrics().stopSummary();
+        System.out.println("Metrics: " + client.getMetrics());
+
+        for (FileRequest file : files) {
+            if (!file.isFound()) {
+                System.out.println("Error File Not Found: " + file.name);
+                continue;
+            }
+            ResponseWriter response = file.writers[0];
+            System.out.println("Packet Data Received from UDPServer:\n" + response.getHeader());
+            System.out.println("Saved " + file.getBodyBytes() + " bytes to " + file.TestFileTemp
+                    + (file.stripes > 1 ? " from " + file.stripes + " stripes" : "")
+                    + (response.isDeflated() ? " (" + response.getEncodedBytes() + " deflated)" : ""));
 
-        //sends request to server
-        DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, IPAddress, port);
-        clientSocket.send(sendPacket);
+            //if running on Tux don't display HTML on browser since it will crash
+            if(!System.getProperty("os.name").equals("Linux")) {
+                //opens the test file on the desktop
+                Desktop desk = Desktop.getDesktop();
+                desk.open(file.TestFileTemp);
+            }
+        }
 
-        System.out.println("Sending request packet...."); //notify user of sending
+    }
 
-        // ********** RECEIVING PACKETS **********
-        System.out.println("Receiving packets...");
+    /** setFaults
+     * @param faults: what the Gremlin does to packets as they arrive
+     * @param seed: seed for the Gremlin's choices, so runs can be repeated; stripe k uses seed + k
+     * @param workers: threads that apply the faults, 0 to apply them inline
+     */
+    void setFaults(FaultInjector.Faults faults, long seed, int workers) {
+        if (workers < 0)
+            throw new IllegalArgumentException("Fault workers must not be negative: " + workers);
+        this.faults = faults;
+        this.faultSeed = seed;
+        this.faultWorkers = workers;
+    }
 
-        DatagramPacket receivePacket; //Declares the Datagram packet for receive packet
-        ArrayList<Packet> receivedPackets = new ArrayList<>(); //create a new array of packets received
-        while (!DataDoneSending ) { //check to see if the data is done sending to host
+    /** setLinger
+     * @param lingerMs: longest wait for the server's FIN after a transfer completes
+     */
+    void setLinger(long lingerMs) {
+        this.lingerMs = lingerMs;
+    }
 
-            receivePacket = new DatagramPacket(receiveData, receiveData.length); //creates a null datagram packet
-            clientSocket.receive(receivePacket); //receives the actual packet from the server
+    /** getMetrics
+     * @return counters for every transfer this client has run
+     */
+    TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** download
+     * Fetches files, all pipelined in one transfer except that a striped file adds a parallel transfer
+     * per stripe, and saves each to a temporary file
+     *
+     * @param fileArguments: "name", "name:range" or "name@stripes" for each file
+     * @return the files in the order asked for, with where they were saved and how long they took
+     * @throws IOException if a transfer fails or the server stops sending
+     */
+    List<FileRequest> download(List<String> fileArguments) throws IOException, InterruptedException {
+        List<FileRequest> files = new ArrayList<>();
+        try {
+            for (String argument : fileArguments) files.add(new FileRequest(argument, ports.length));
 
-            //create a packet from the data received
-            Packet createReceivedPacket = Packet.CreatePacket(receivePacket);
-            packetNumber++;
+            //transfer k runs on ports[k] and asks every file striped more than k ways for its k-th stripe
+            int transfers = 1;
+            for (FileRequest file : files) transfers = Math.max(transfers, file.stripes);
+            String[] requestText = new String[transfers];
+            List<List<FileRequest>> transferFiles = new ArrayList<>();
+            for (int transfer = 0; transfer < transfers; transfer++) {
+                StringBuilder requests = new StringBuilder();
+                List<FileRequest> streams = new ArrayList<>();
+                for (FileRequest file : files) {
+                    if (transfer >= file.stripes)
+                        continue;
+                    //one GET per file, pipelined; the first carries the transfer settings
+                    requests.append("GET ").append(file.name).append(" HTTP/1.0\r\n");
+                    if (streams.isEmpty())
+                        requests.append("ARQ: ").append(mode.getHeaderName()).append("\r\n")
+                                .append("Request-Id: ").append(Long.toHexString(requestIds.nextLong())).append("\r\n")
+                                .append("Window: ").append(windowSize).append("\r\n")
+                                .append("Packet-Size: ").append(packetSize).append("\r\n")
+                                .append("FEC: ").append(fecSetting).append("\r\n");
+                    if (file.stripes > 1)
+                        requests.append("Range: stripe=").append(transfer).append('/').append(file.stripes).append("\r\n");
+                    else if (file.range != null)
+                        requests.append("Range: bytes=").append(file.range).append("\r\n");
+                    else
+                        requests.append("Accept-Encoding: ").append(FileResponse.DEFLATE).append("\r\n");
+                    requests.append("\r\n");
+                    streams.add(file);
+                }
+                requestText[transfer] = requests.toString();
+                transferFiles.add(streams);
+            }
 
-            System.out.println("Packet: " + packetNumber);
-            //checks to see if the packet data is null
-            //if it is then that means the data is done sending and it will break out of the loop
-            if (createReceivedPacket.GETPacketData()[0] == '\0') {
-                DataDoneSending = true;
-                if(receivedPackets.size() == 0){
-                    System.out.println("Error File Not Found");
-                    return;
+            long start = System.nanoTime();
+            if (transfers == 1) {
+                fetch(ports[0], requestText[0], transferFiles.get(0), 0, start);
+            } else {   //every stripe in parallel, each with its own socket, window and receive engine
+                ExecutorService stripes = Executors.newFixedThreadPool(transfers);
+                try {
+                    List<Future<Void>> running = new ArrayList<>();
+                    for (int transfer = 0; transfer < transfers; transfer++) {
+                        int stripe = transfer;
+                        running.add(stripes.submit(() -> {
+                            fetch(ports[stripe], requestText[stripe], transferFiles.get(stripe), stripe, start);
+                            return null;
+                        }));
+                    }
+                    for (Future<Void> stripe : running) stripe.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new IOException("Stripe failed", e.getCause());
+                } finally {
+                    stripes.shutdownNow();
                 }
-            } else {
-                receivedPackets.add(createReceivedPacket); //received packets are added to the packet array
             }
+        } finally {
+            for (FileRequest file : files) file.finish();
         }
+        return files;
+    }
 
-        //use command line arguments to detect Gremlin probability
-        //checks for no arguments and if there are none then notify user and
-        //set the DataDoneSending to true
-        System.out.println("Running Gremlin...");
-        if (args.length == 0) {
-            System.out.println("There are no arguments detected for Gremlin Probability");
-        } else {
-            //if there is arguments then set the Gremlin Probability to these
-            GremlinProbability = args[0];
+    /** fetch
+     * Sends one request datagram, possibly with several pipelined GETs, to a server port and receives
+     * the transfer that answers it, writing each stream to its file
+     *
+     * @param port: server port to send the request to
+     * @param requestText: the GET requests
+     * @param files: file for each stream of the transfer, in request order
+     * @param stripe: which stripe of the files this transfer carries
+     * @param start: System.nanoTime() the download started at
+     * @throws IOException if the transfer fails or the server stops sending
+     */
+    private void fetch(int port, String requestText, List<FileRequest> files, int stripe, long start) throws IOException {
+        DatagramChannel clientChannel = DatagramChannel.open().bind(null);  //receive engine reads the channel
+        DatagramSocket clientSocket = clientChannel.socket();        //creates socket for user
+        int[] fecBlock = FecEncoder.parse(fecSetting);
+        FecDecoder fec = fecBlock == null ? null : new FecDecoder(fecBlock[0], fecBlock[1], packetSize, windowSize);
+        //room for at least a full window of large packets, so a burst is not dropped by the socket
+        ReceiveEngine engine = new ReceiveEngine(clientChannel, packetSize, Math.max(receiveBuffer, windowSize * packetSize),
+                ReceiveEngine.DEFAULT_QUEUE_CAPACITY);
+        System.out.println("Socket receive buffer: " + (engine.getReceiveBufferSize() >> 10) + " KB");
+        FaultInjector gremlin = new FaultInjector(engine::poll, faults, faultSeed + stripe, faultWorkers, metrics);
+
+        //each body is streamed straight to its file as segments are reassembled
+        List<ResponseWriter> outputs = new ArrayList<>();
+        for (FileRequest file : files) outputs.add(file.writers[stripe]);
+        SlidingWindowReceiver receiver = new SlidingWindowReceiver(mode, windowSize,
+                outputs.toArray(new WritableByteChannel[0]));
+        try {
+            // ********** SENDING DATA **********
+            byte[] sendData = requestText.getBytes(); //gets request in byte form
+
+            //sends request to server, again each timeout until the first segment comes back
+            DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, IPAddress, port);
+            RttEstimator requestRtt = new RttEstimator(REQUEST_TIMEOUT_MS);
+            Packet firstPacket = null;
+            long sentAt = 0;
+            for (int attempt = 0; attempt < REQUEST_ATTEMPTS && firstPacket == null; attempt++) {
+                if (attempt > 0)
+                    requestRtt.backoff();
+                sentAt = System.nanoTime();
+                clientSocket.send(sendPacket);
+                System.out.println("Sending request packet...."); //notify user of sending
+                firstPacket = gremlin.poll(requestRtt.getRetransmitTimeout(), TimeUnit.NANOSECONDS);
+                if (firstPacket != null && attempt == 0)
+                    requestRtt.onSample(System.nanoTime() - sentAt);   //a resent request gives no clean sample
+            }
+            if (fec != null)
+                fec.setRoundTrip(requestRtt.getSmoothedRtt());
+            if (firstPacket == null)
+                throw new IOException("No response from the server after " + REQUEST_ATTEMPTS + " requests");
+
+            // ********** RECEIVING PACKETS **********
+            System.out.println("Receiving packets...");
+
+            Packet createReceivedPacket = firstPacket;
+            while (true) {
+                if (acknowledge(clientSocket, receiver, fec, createReceivedPacket))
+                    throw new IOException("Server finished after " + receiver.getBytesReceived() + " bytes of an incomplete response");
+                if (receiver.isComplete()) //check to see if the data is done sending to host
+                    break;
+                //takes the next packet the receive engine pulled off the socket, once the Gremlin is done with it
+                createReceivedPacket = gremlin.poll(SERVER_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (createReceivedPacket == null)
+                    throw new IOException("Server stopped sending after " + receiver.getBytesReceived() + " bytes");
+            }
+            long elapsed = System.nanoTime() - start;
+            for (FileRequest file : files) file.onTransferComplete(elapsed);
+
+            //keep answering retransmissions until the FIN says the server has the final ACK
+            long finWait = Math.max(lingerMs * 1_000_000L, 2 * requestRtt.getRetransmitTimeout());
+            long finDeadline = System.nanoTime() + finWait;
+            Packet straggler;
+            while ((straggler = gremlin.poll(finDeadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                if (acknowledge(clientSocket, receiver, fec, straggler))
+                    break;
+            }
+        } finally {
+            receiver.close();
+            gremlin.close();
+            engine.close();     //closes the socket too
+        }
+        for (ResponseWriter stream : outputs) stream.close();
+        System.out.println(engine);
+        if (faults.isActive())
+            System.out.println(gremlin);
+        if (fec != null)
+            System.out.println(fec.describe(receiver.getBytesReceived()));
+    }
+
+    /** FileRequest Class
+     * One file argument, "name", "name:range" or "name@stripes", the temporary file its response
+     * is saved to and, once downloaded, how it went
+     */
+    static class FileRequest {
+        static final int HTTP_NOT_FOUND = 404;
+        final String name;
+        final String range;         //byte range such as "1000-", or null for the whole file
+        final int stripes;          //ports the file is split across
+        final File TestFileTemp;
+        final FileChannel saved;
+        final ResponseWriter[] writers;     //one per stripe
+        private long transferNanos;         //until the last stripe completed
+
+        FileRequest(String argument, int maxStripes) throws IOException {
+            String spec = argument;
+            int at = spec.lastIndexOf('@');
+            stripes = at > 0 ? Integer.parseInt(spec.substring(at + 1)) : 1;
+            if (at > 0)
+                spec = spec.substring(0, at);
+            int colon = spec.lastIndexOf(':');
+            name = colon > 0 ? spec.substring(0, colon) : spec;
+            range = colon > 0 ? spec.substring(colon + 1) : null;
+            if (stripes < 1 || stripes > maxStripes || (stripes > 1 && range != null))
+                throw new IllegalArgumentException("Bad file argument: " + argument + " (expected name, name:range or name@1-"
+                        + maxStripes + ")");
+
+            String baseName = new File(name).getName();
+            int dot = baseName.lastIndexOf('.');
+            String prefix = dot > 0 ? baseName.substring(0, dot) : baseName;
+            TestFileTemp = File.createTempFile(prefix.length() >= 3 ? prefix : "file", dot > 0 ? baseName.substring(dot) : null);
+            saved = FileChannel.open(TestFileTemp.toPath(), StandardOpenOption.WRITE);
+            writers = new ResponseWriter[stripes];
+            for (int stripe = 0; stripe < stripes; stripe++)
+                writers[stripe] = stripes == 1 ? new ResponseWriter(saved) : ResponseWriter.stripe(saved);
         }
-        //send each of the packets with arguments through the Gremlin function to
-        //determine whether to change some of the packet bit or pass the packet as it is to the receiving function
-        for (Packet packets : receivedPackets) {
-            Gremlin(GremlinProbability, packets);
+
+        //Records that a transfer carrying this file has completed, stripes possibly from different threads
+        synchronized void onTransferComplete(long elapsed) {
+            transferNanos = Math.max(transferNanos, elapsed);
         }
 
-        //Check for error detection in the received packets
-        ErrorDetection(receivedPackets);
+        //Closes the saved file, deleting it if the file was not found or the download failed
+        void finish() throws IOException {
+            saved.close();
+            if (!isFound())
+                TestFileTemp.delete();
+        }
 
-        //Reassembles Packets that were received
-        byte[] ReassemblePacketFile = Packet.ReassemblePacket(receivedPackets);
-        String modifiedPacketData = new String(ReassemblePacketFile);
-        System.out.println("Packet Data Received from UDPServer:\n" + modifiedPacketData);
-        clientSocket.close();
+        /** isFound
+         * @return true if the server sent the file, false for a 404 response or a failed download
+         */
+        boolean isFound() {
+            return writers[0].getHeader() != null && writers[0].getStatusCode() != HTTP_NOT_FOUND && getTransferNanos() > 0;
+        }
 
-        //Display packets using a Web browser
-        int index = modifiedPacketData.lastIndexOf("\r\n", 100);
-        modifiedPacketData = modifiedPacketData.substring(index);
+        /** getFile
+         * @return where the file was saved, or null if it was not found
+         */
+        File getFile() {
+            return isFound() ? TestFileTemp : null;
+        }
 
-        //if running on Tux don't display HTML on browser since it will crash
-        if(!System.getProperty("os.name").equals("Linux")) {
-            //creates a temporary TestFile
-            File TestFileTemp = File.createTempFile("TestFile", ".html");
-            FileWriter writer = new FileWriter(TestFileTemp);
-            writer.write(modifiedPacketData);
-            writer.close();
-            //opens the test file on the desktop
-            Desktop desk = Desktop.getDesktop();
-            desk.open(TestFileTemp);
+        /** getBodyBytes
+         * @return bytes saved, over every stripe
+         */
+        long getBodyBytes() {
+            long bodyBytes = 0;
+            for (ResponseWriter stripe : writers) bodyBytes += stripe.getBodyBytes();
+            return bodyBytes;
         }
 
+        /** getTransferNanos
+         * @return time from sending the request until the file had fully arrived, 0 if it never did
+         */
+        synchronized long getTransferNanos() {
+            return transferNanos;
+        }
     }
 
-    /**Gremlin function
-     * Gremlin will damage bits depending on runtime user argument, number of bits also depends on probability
-     * P(1 byte damaged) = 50%
-     * P(2 bytes damaged) = 30%
-     * P(3 bytes damaged) = 20%
+    /**acknowledge function
+     * Runs a received packet through ErrorDetection, hands it to the receiver and
+     * sends the resulting ACK or NAK back to the server session the packet came from. Parity segments
+     * go to the FEC decoder, and any segment it rebuilds is handed to the receiver as if it had arrived.
+     * An intact FIN is answered with a FIN-ACK.
      *
-     * @param probOfDamage: probability that a bit will be damaged
-     * @param receivedPacket: packet to be damaged by gremlin
-     **/
-    private static void Gremlin(String probOfDamage, Packet receivedPacket) {
-        Random random = new Random();
-
-        int dmgRand = random.nextInt(100) + 1; //pick a random number between 1 - 100
-        int howManyRand = random.nextInt(100) + 1; //pick a random number between 1 - 100
-        int bytesToChange;
-        if (howManyRand <= 50) {    //Change only 1 Byte
-            bytesToChange = 1;
-        } else if (howManyRand <= 80) { //Change 2 Bytes
-            bytesToChange = 2;
-        } else bytesToChange = 3; //Change 3 Bytes
-        double damagedProbability = Double.parseDouble(probOfDamage) * 100;
-        if (dmgRand <= damagedProbability) { //if probability to change bytes is hit
-            for (int i = 0; i <= bytesToChange; i++) {
-                byte[] data = receivedPacket.GETPacketData();
-                int byteToCorrupt = random.nextInt(receivedPacket.getPacketDataSize()); // pick a random byte
-                data[byteToCorrupt] = (byte) ~data[byteToCorrupt]; // flip the bits in that byte
-            }
-
+     * @param clientSocket: socket to send the reply on
+     * @param receiver: sliding window state for this transfer
+     * @param fec: parity decoder, or null when FEC is off
+     * @param receivedPacket: packet just received from the server
+     * @return true if the packet was the server's FIN
+     */
+    private boolean acknowledge(DatagramSocket clientSocket, SlidingWindowReceiver receiver, FecDecoder fec,
+                                Packet receivedPacket) throws IOException {
+        metrics.onSegmentReceived(Packet.HEADER_SIZE + receivedPacket.getPacketDataSize());
+        byte type = receivedPacket.getType();
+        if (type == Packet.TYPE_FIN && receivedPacket.isCheckSumValid()) {
+            Packet finAck = Packet.createControl(Packet.TYPE_FIN_ACK, receivedPacket.getSegmentNumber(), 0);
+            clientSocket.send(finAck.getDatagramPacket(receivedPacket.getAddress(), receivedPacket.getPort()));
+            finAck.release();
+            receivedPacket.release();
+            return true;
+        }
+        if (type != Packet.TYPE_DATA && type != Packet.TYPE_PARITY) {
+            receivedPacket.release();
+            return false;
+        }
+        InetAddress IPAddress = receivedPacket.getAddress();
+        int port = receivedPacket.getPort();
+        List<Packet> rebuilt = new ArrayList<>(1);
+        Packet reply = null;
+        if (type == Packet.TYPE_PARITY) {
+            if (fec != null)
+                fec.onParity(receivedPacket, rebuilt);
+            else
+                receivedPacket.release();
+        } else if (ErrorDetection(receivedPacket)) {
+            if (fec != null)
+                fec.onData(receivedPacket, rebuilt);
+            reply = receiver.onData(receivedPacket);
+        } else {
+            reply = receiver.onCorrupt(receivedPacket);
+        }
+        for (Packet segment : rebuilt) {
+            metrics.onSegmentRebuilt();
+            if (reply != null)
+                reply.release();    //the ACK for the rebuilt segment supersedes it
+            reply = receiver.onData(segment);
         }
+        if (reply != null) {
+            clientSocket.send(reply.getDatagramPacket(IPAddress, port));
+            reply.release();
+        }
+        return false;
     }
 
     /**ErrorDetection function
-     * Detects if packet was damaged by Gremlin function, prints packet number of corrupted packet
+     * Detects if packet was damaged by the Gremlin or the network, counting it as a checksum failure
      *
-     * @param PacketList: list of packets received by Client
+     * @param receivedPacket: packet received by Client
+     * @return true if the packet is undamaged
      */
-    private static void ErrorDetection(ArrayList<Packet> PacketList) {
-        for (Packet aPacketList : PacketList) {
-            String strReceivedCheckSum = aPacketList.getHeaderValue(Packet.HEADER_ELEMENTS.CHECKSUM);
-            Short receivedCheckSum = Short.parseShort(strReceivedCheckSum);
-
-            byte[] data = aPacketList.GETPacketData();
-            short calcCheckSum = Packet.CheckSum(data);
-            if (!receivedCheckSum.equals(calcCheckSum)) //Checks to see if packets prior checksum is equal to current checksum
-                System.out.println("Error detected in Packet Number: " + aPacketList.getHeaderValue(Packet.HEADER_ELEMENTS.SEGMENT_NUMBER));
+    private boolean ErrorDetection(Packet receivedPacket) {
+        if (!receivedPacket.isCheckSumValid()) { //Checks to see if packets prior checksum is equal to current checksum
+            metrics.onChecksumFailure();
+            return false;
         }
+        return true;
     }
 
 }
\ No newline at end of file
@@ -1,108 +1,489 @@
-import java.io.File;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /** UDPServer Class
  * Runs on Server machine to send HTML files to Client
- * Compile using java UDPServer
+ * Compile using java UDPServer [gbn|sr] [windowSize] [maxSessions] [blocking|nio] [congestionControl] [cacheMB]
+ *                              [listenPorts] [summarySeconds]
+ * The ARQ mode, window size and congestion control (none, reno or cubic, optionally "-paced") default
+ * to the arguments unless the client's request asks for others.
+ * Packets are Packet.DEFAULT_PACKET_SIZE bytes unless the request carries a Packet-Size header, which
+ * the client can pick with an MtuProbe; PROBE requests are answered straight from the request socket.
+ * An "FEC: k/m" header adds m parity segments after every k data segments.
+ * Responses for popular files are kept ready to send in a ResponseCache of cacheMB megabytes (default 64).
+ * Several GETs pipelined in one request datagram are sent as one transfer with a stream per file
+ * (see StreamMultiplexer), and a Range header asks for part of a file. Whole files are sent deflated
+ * to clients that send "Accept-Encoding: deflate" (see FileResponse).
+ * With listenPorts above 1 the server takes requests on that many of the group's ports, each with its
+ * own worker, so a client can stripe one file across them with "Range: stripe=i/n" requests.
+ * Throughput, retransmissions, segment latency and session counts are kept in a TransferMetrics,
+ * published over JMX and summarised every summarySeconds (default 10, 0 for never).
+ * The blocking engine serves each request on its own thread and ephemeral socket, so the client must
+ * send its ACKs to the address the data segments come from. The nio engine drives every transfer
+ * from one thread through NioServerEngine, building each new transfer's response on a session thread.
+ * A GET that carries the Request-Id of a transfer to the same client that ended less than
+ * REQUEST_RETRY_WINDOW_MS ago is a late retry and is ignored, since the client has stopped listening.
+ * A new request always carries a new id, so a client can fetch the same file again at once.
+ * The server can also be embedded, for example by a benchmark: construct it with the address and
+ * ports to listen on (0 for any free port), start() it, read the bound ports from getPorts() and
+ * close() it when done.
  * Use tux050 - tux065 when running
  * @author Stephanie Parrish, Jordan Sosnowski, Marcus Woodard
  * @version 7.15.18
  */
-public class UDPServer {
+public class UDPServer implements Closeable {
+
+    static final int DEFAULT_MAX_SESSIONS = 64;    //transfers allowed to run at the same time
+    static final int[] GROUP_PORTS = {10028, 10029, 10030, 10031};  //list of port numbers assigned to our group to use
+    //longest a client keeps resending a GET: the first timeout and then every backed off one
+    static final long REQUEST_RETRY_WINDOW_MS = UDPClient.REQUEST_TIMEOUT_MS
+            + (UDPClient.REQUEST_ATTEMPTS - 1) * RttEstimator.MAX_RETRANSMIT_TIMEOUT_MS;
+
+    private final InetAddress bindAddress;
+    private final int[] ports;
+    private final ArqMode defaultMode;
+    private final int defaultWindowSize;
+    private final int maxSessions;
+    private final String engine;
+    private final String defaultCongestion;
+    //clients with a transfer in progress and the requestKey() it answers, "" without a Request-Id, so a
+    //repeated GET does not start a second session
+    private final Map<SocketAddress, String> activeSessions = new ConcurrentHashMap<>();
+    //when the transfer for each recent request id ended, keyed by requestKey(), so a late retry is not served again
+    private final Map<String, Long> endedRequests = new ConcurrentHashMap<>();
+    //encoded responses shared by every session and both engines
+    private final ResponseCache responseCache;
+    //counters for every session of both engines
+    private final TransferMetrics metrics = new TransferMetrics();
+    private final List<Thread> workers = new ArrayList<>();
+    private final List<DatagramSocket> requestSockets = new ArrayList<>();
+    private final List<NioServerEngine> engines = new ArrayList<>();
+    //session sockets of the blocking engine, closed to end their transfers when the server is closed
+    private final Set<DatagramSocket> sessionSockets = ConcurrentHashMap.newKeySet();
+    private ExecutorService sessionExecutor;
+    private int[] boundPorts;
+    private volatile boolean closed;
+
+    /** UDPServer
+     * Creates a server; nothing is bound until start()
+     *
+     * @param bindAddress: local address to listen on, or null for every address
+     * @param ports: ports to take requests on, 0 for any free port
+     * @param defaultMode: ARQ mode for requests without an ARQ header
+     * @param defaultWindowSize: window for requests without a Window header
+     * @param maxSessions: most transfers allowed at once, across every port
+     * @param engine: "blocking" or "nio"
+     * @param defaultCongestion: congestion control for requests without a Congestion header
+     * @param cacheBytes: capacity of the response cache
+     */
+    UDPServer(InetAddress bindAddress, int[] ports, ArqMode defaultMode, int defaultWindowSize, int maxSessions,
+              String engine, String defaultCongestion, long cacheBytes) {
+        if (!engine.equalsIgnoreCase("blocking") && !engine.equalsIgnoreCase("nio"))
+            throw new IllegalArgumentException("Unknown server engine: " + engine + " (expected blocking or nio)");
+        CongestionControl.create(defaultCongestion, 1);    //reject a bad name before serving anything
+        this.bindAddress = bindAddress;
+        this.ports = ports.clone();
+        this.defaultMode = defaultMode;
+        this.defaultWindowSize = defaultWindowSize;
+        this.maxSessions = maxSessions;
+        this.engine = engine;
+        this.defaultCongestion = defaultCongestion;
+        this.responseCache = new ResponseCache(cacheBytes);
+    }
 
     public static void main(String args[]) throws Exception {
 
-        int[] ports = {10028, 10029, 10030, 10031}; //list of port numbers assigned to our group to use
-        int port = ports[0];
+        //default ARQ mode and window size, a client can override them with ARQ: and Window: request headers
+        ArqMode defaultMode = args.length > 0 ? ArqMode.parse(args[0]) : ArqMode.SELECTIVE_REPEAT;
+        int defaultWindowSize = args.length > 1 ? Integer.parseInt(args[1]) : SlidingWindowSender.DEFAULT_WINDOW_SIZE;
+        int maxSessions = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_SESSIONS;
+        String engine = args.length > 3 ? args[3] : "blocking";
+        String defaultCongestion = args.length > 4 ? args[4] : CongestionControl.DEFAULT_NAME;
+        long cacheBytes = args.length > 5 ? Long.parseLong(args[5]) << 20 : ResponseCache.DEFAULT_CAPACITY_BYTES;
+        int listenPorts = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+        if (listenPorts < 1 || listenPorts > GROUP_PORTS.length)
+            throw new IllegalArgumentException("listenPorts must be 1 to " + GROUP_PORTS.length);
+        long summarySeconds = args.length > 7 ? Long.parseLong(args[7]) : TransferMetrics.DEFAULT_SUMMARY_SECONDS;
+        UDPServer server = new UDPServer(null, Arrays.copyOf(GROUP_PORTS, listenPorts), defaultMode, defaultWindowSize,
+                maxSessions, engine, defaultCongestion, cacheBytes);
 
         System.out.print("Getting IP Address..."); //remove later
         String localhost = InetAddress.getLocalHost().getHostAddress().trim();  //grabs IP to use for Client
         System.out.println("\nConnected to: " + localhost); //prints out the Server IP
 
-        DatagramSocket serverSocket = new DatagramSocket(port);
+        server.getMetrics().register("server");
+        server.getMetrics().startSummary(summarySeconds);
+        server.start();
+        server.join();
+    }
+
+    /** start
+     * Binds every port and starts serving on background threads: one request thread per port for the
+     * blocking engine, one NioServerEngine thread per port for the nio engine
+     *
+     * @throws IOException if a port cannot be bound; anything already bound is closed again
+     */
+    synchronized void start() throws IOException {
+        if (boundPorts != null || closed)
+            throw new IllegalStateException("Server already started");
+        boundPorts = new int[ports.length];
+        //blocking transfers run on these threads, nio transfers only have their responses built on them
+        sessionExecutor = newSessionExecutor(maxSessions);
+        //one limit for every port, whichever engine serves them
+        Semaphore sessionPermits = new Semaphore(maxSessions);
+        try {
+            if (engine.equalsIgnoreCase("nio")) {
+                for (int i = 0; i < ports.length; i++) {
+                    NioServerEngine worker = new NioServerEngine(this, defaultMode, defaultWindowSize, defaultCongestion,
+                            sessionPermits, sessionExecutor);
+                    engines.add(worker);
+                    boundPorts[i] = worker.bind(new InetSocketAddress(bindAddress, ports[i]));
+                    workers.add(new Thread(() -> {
+                        try {
+                            worker.run();
+                        } catch (IOException e) {
+                            if (!closed)
+                                System.out.println("Engine stopped: " + e);
+                        }
+                    }, "nio-" + boundPorts[i]));
+                }
+            } else {
+                //each transfer runs on its own thread with its own socket, so a slow client never blocks the others
+                for (int i = 0; i < ports.length; i++) {
+                    DatagramSocket serverSocket = new DatagramSocket(new InetSocketAddress(bindAddress, ports[i]));
+                    requestSockets.add(serverSocket);
+                    boundPorts[i] = serverSocket.getLocalPort();
+                    workers.add(new Thread(() -> {
+                        try {
+                            receiveRequests(serverSocket, sessionPermits);
+                        } catch (IOException e) {
+                            if (!closed)
+                                System.out.println("Request thread stopped: " + e);
+                        }
+                    }, "requests-" + boundPorts[i]));
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (Thread worker : workers) worker.start();
+    }
+
+    /** join
+     * Waits until the server is closed
+     */
+    void join() throws InterruptedException {
+        List<Thread> running;
+        synchronized (this) {
+            running = new ArrayList<>(workers);
+        }
+        for (Thread worker : running) worker.join();
+    }
+
+    /** close
+     * Stops taking requests and ends every transfer in progress
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (DatagramSocket socket : requestSockets) socket.close();
+        for (NioServerEngine worker : engines) worker.close();
+        for (DatagramSocket socket : sessionSockets) socket.close();
+        if (sessionExecutor != null)
+            sessionExecutor.shutdown();
+        metrics.stopSummary();
+    }
+
+    /** getPorts
+     * @return the ports requests are taken on, in the order given, once started
+     */
+    int[] getPorts() {
+        return boundPorts == null ? null : boundPorts.clone();
+    }
+
+    /** getMetrics
+     * @return counters for every transfer this server has run
+     */
+    TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** requestKey
+     * @param client: address the request came from
+     * @param request: first request of the datagram, which carries the Request-Id
+     * @return key for the request in the ended requests, the client followed by the request id, or null
+     * if the request has no id and so cannot be told apart from a new request for the same files
+     */
+    static String requestKey(SocketAddress client, Request request) {
+        String requestId = request.getRequestId();
+        return requestId == null ? null : client + " " + requestId;
+    }
 
+    /** isEndedRequest
+     * @param requestKey: key of a request that just arrived, from requestKey(), or null
+     * @return true if a transfer for the same request id from the same client ended within
+     * REQUEST_RETRY_WINDOW_MS, so this is a late retry of it
+     */
+    boolean isEndedRequest(String requestKey) {
+        if (requestKey == null)
+            return false;
+        Long endedAt = endedRequests.get(requestKey);
+        return endedAt != null && System.nanoTime() - endedAt < REQUEST_RETRY_WINDOW_MS * 1_000_000L;
+    }
 
-        byte[] receiveData = new byte[256]; //create bytes for sending/receiving data
+    /** onTransferEnded
+     * Remembers that a request's transfer ended, and forgets the requests that are past the retry window.
+     * Shared by the blocking and nio engines.
+     *
+     * @param requestKey: key of the request the transfer answered, from requestKey(), or null
+     */
+    void onTransferEnded(String requestKey) {
+        long now = System.nanoTime();
+        endedRequests.values().removeIf(endedAt -> now - endedAt >= REQUEST_RETRY_WINDOW_MS * 1_000_000L);
+        if (requestKey != null)
+            endedRequests.put(requestKey, now);
+    }
 
-        Scanner readFileIn;  //Create an instance of the Scanner class so files can be read in
+    /** receiveRequests
+     * Receives GET and PROBE requests on one port until the server is closed, answering probes and
+     * handing each GET to a session thread
+     *
+     * @param serverSocket: socket bound to one of the server's ports
+     * @param sessionPermits: limits the transfers running at once, across every port
+     */
+    private void receiveRequests(DatagramSocket serverSocket, Semaphore sessionPermits) throws IOException {
+        byte[] receiveData = new byte[Packet.MAX_PACKET_SIZE]; //create bytes for sending/receiving data, big enough for any probe
 
-        while (true) {
+        while (!closed) {
             System.out.println("Ready to Receive Transmission...");
-            StringBuilder fileDataContents = new StringBuilder();   //variable for the file data contents
             DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length); //Creates a new datagram
-            serverSocket.receive(receivePacket);
+            try {
+                serverSocket.receive(receivePacket);
+            } catch (IOException e) {
+                if (closed)
+                    return;     //the socket was closed by close()
+                throw e;
+            }
             System.out.println("Receiving the request packet.");
 
             //Gets the IPAddress and Port number of Host
             InetAddress IPAddress = receivePacket.getAddress();
             int portReceive = receivePacket.getPort();
+            SocketAddress client = receivePacket.getSocketAddress();
 
 
-            String dataFromClient = new String(receivePacket.getData()); //Gets the data for the packet from host
-
             ///File Data read in/////////
-            //gets the data that needs to be read which is the packet data from above
-            //The next few lines will check the filename for white space make sure file name is correct
-            readFileIn = new Scanner(dataFromClient);
+            //parses the request line and headers sent by the host
+            List<Request> requests;
+            Request request;
+            ArqMode mode;
+            int windowSize;
+            CongestionControl congestionControl;
+            FecEncoder fec;
+            try {
+                requests = Request.parseAll(receivePacket.getData(), receivePacket.getLength());
+                request = requests.get(0);  //the first request carries the transfer settings
+                mode = request.getArqMode(defaultMode);
+                windowSize = request.getWindowSize(defaultWindowSize);
+                congestionControl = request.getCongestionControl(defaultCongestion, windowSize);
+                fec = request.getFecEncoder(request.getPacketSize(Packet.DEFAULT_PACKET_SIZE));
+            }
+            catch (IllegalArgumentException e) {   //not a request we understand, wait for the next one
+                System.out.println("Ignoring bad request: " + e.getMessage());
+                continue;
+            }
 
-            readFileIn.next(); //skips the GET command of the HTTP request message to just read in the TestFile
-            String fileName = readFileIn.next(); //grabs file name
-            readFileIn.close(); //closes the file
+            if (request.isProbe()) {    //path MTU probe, echo its size back at the same size
+                byte[] probeReply = MtuProbe.encodeReply(receivePacket.getLength());
+                try {
+                    serverSocket.send(new DatagramPacket(probeReply, probeReply.length, IPAddress, portReceive));
+                } catch (IOException e) {
+                    System.out.println("Probe reply to " + client + " failed: " + e.getMessage());
+                }
+                continue;
+            }
 
-            try {
-                readFileIn = new Scanner(new File(fileName));  //File requested by host
+            String requestKey = requestKey(client, request);
+            if (isEndedRequest(requestKey)) {
+                System.out.println("Ignoring a late repeat of a finished request from " + client);
+                continue;
             }
-            catch (Exception e) {   //if file not found, crashes gracefully
-                System.out.println(e.getClass());
-                serverSocket.send(setNullPacket(IPAddress, portReceive));
+            //a request with another id than the client's transfer in progress means the client has seen that
+            //transfer's FIN, and its session is only winding down
+            String activeKey = requestKey == null ? "" : requestKey;
+            String active = activeSessions.putIfAbsent(client, activeKey);
+            if (active != null && (requestKey == null || active.equals(requestKey)
+                    || !activeSessions.replace(client, active, activeKey))) {
+                System.out.println("Transfer to " + client + " already in progress");
                 continue;
             }
-            while (readFileIn.hasNext()) {  //get the contents of the file line by line
-                fileDataContents.append(readFileIn.nextLine());
+            if (!sessionPermits.tryAcquire()) {
+                activeSessions.remove(client, activeKey);
+                System.out.println("Server busy, dropping request from " + client);
+                continue;
             }
-            System.out.println("File: " + fileDataContents); //print the file contents received
-            readFileIn.close(); //close the file
+            sessionExecutor.execute(() -> {
+                try (DatagramSocket sessionSocket = new DatagramSocket(new InetSocketAddress(bindAddress, 0))) {   //ephemeral port for this transfer
+                    sessionSockets.add(sessionSocket);
+                    try {
+                        if (!closed)
+                            serveRequest(sessionSocket, requests, IPAddress, portReceive, mode, windowSize,
+                                    congestionControl, fec);
+                    } finally {
+                        sessionSockets.remove(sessionSocket);
+                    }
+                } catch (Exception e) {
+                    if (!closed)
+                        System.out.println("Transfer to " + client + " failed: " + e);
+                } finally {
+                    onTransferEnded(requestKey);    //before the client can start a second session with a retry
+                    activeSessions.remove(client, activeKey);
+                    sessionPermits.release();
+                }
+            });
+        }
+    }
+
+    /** serveRequest
+     * Reads the requested files and sends them to the client. Runs on a session thread.
+     *
+     * @param sessionSocket: socket used only by this transfer
+     * @param requests: parsed GET requests, one or more pipelined
+     * @param IPAddress: IP Address of Client
+     * @param portReceive: Port of Client
+     * @param mode: Go-Back-N or Selective Repeat
+     * @param windowSize: maximum number of unacknowledged segments in flight
+     * @param congestionControl: decides how much of the window may be used
+     * @param fec: parity encoder, or null for none
+     */
+    private void serveRequest(DatagramSocket sessionSocket, List<Request> requests, InetAddress IPAddress,
+                              int portReceive, ArqMode mode, int windowSize,
+                              CongestionControl congestionControl, FecEncoder fec) throws IOException {
+        sendReliably(sessionSocket, buildResponse(requests), IPAddress, portReceive, mode, windowSize,
+                congestionControl, fec);
+    }
 
+    /** buildResponse
+     * Returns the segments of the transfer answering one or more pipelined requests, each response
+     * in its own stream. Shared by the blocking and nio engines.
+     *
+     * @param requests: parsed GET requests; the first gives the packet size to segment into
+     * @return segments of every response, interleaved
+     */
+    Iterator<Packet> buildResponse(List<Request> requests) {
+        int packetSize = requests.get(0).getPacketSize(Packet.DEFAULT_PACKET_SIZE);
+        if (requests.get(0).hasFec())
+            packetSize -= FecEncoder.PARITY_HEADER_SIZE;   //room for the parity header in parity segments
+        List<Iterator<Packet>> responses = new ArrayList<>(requests.size());
+        for (Request request : requests)
+            responses.add(buildResponse(request, packetSize));
+        return new StreamMultiplexer(responses);
+    }
 
-            //Header Form given by Lab document
-            String HTTP_HeaderForm = "HTTP/1.0 200 Document Follows\r\n"
-                    + "Content-Type: text/plain\r\n"
-                    + "Content-Length: " + fileDataContents.length() + "\r\n"
-                    + "\r\n" + fileDataContents;
+    /** buildResponse
+     * Returns the segments of the HTTP response for one requested file, from the response cache
+     * or produced on demand from the mapped file
+     *
+     * @param request: parsed GET request
+     * @param packetSize: wire size of each full segment
+     * @return segments of the response, or of a 404 response if the file was not found
+     */
+    private Iterator<Packet> buildResponse(Request request, int packetSize) {
+        String fileName = request.getFileName(); //grabs file name
+        String range = request.getRange();
+        Iterator<Packet> response;
+        try {
+            if (range == null)  //File requested by host
+                response = responseCache.get(fileName, packetSize, request.acceptsEncoding(FileResponse.DEFLATE));
+            else    //partial responses are mapped as asked and not cached
+                response = new Segmenter(FileResponse.open(fileName, range).getParts(), packetSize);
+        }
+        catch (Exception e) {   //if file not found, crashes gracefully
+            System.out.println("File not found: " + fileName + " (" + e.getClass().getSimpleName() + ")");
+            return new Segmenter(FileResponse.notFound().getParts(), packetSize);
+        }
+        System.out.println("File: " + fileName + (range == null ? "" : " " + range) + " (" + packetSize
+                + " byte packets, " + responseCache + ")");
 
+        //////////////////////////////////////////////////////////////////////////////////////
+        return response; //cached segments, or header and mapped file segmented as the window opens
+    }
 
-            //////////////////////////////////////////////////////////////////////////////////////
-            ArrayList<Packet> PacketList = Packet.Segmentation(HTTP_HeaderForm.getBytes()); //segments file into packets
-            int packetNumber = 0;
-            for (Packet packet : PacketList) {  //iterates through packets and sends them to host
-                DatagramPacket sendPacket = packet.getDatagramPacket(IPAddress, portReceive);
-                serverSocket.send(sendPacket);
-                packetNumber++;
-                System.out.println("Sending Packet " + packetNumber + " of " + PacketList.size());
-            }
-            //Sends Null Packet to let host know transfer is over
-            //TODO check and see if this is correct implementation
-            serverSocket.send(setNullPacket(IPAddress, portReceive));
+    /** newSessionExecutor
+     * Uses a virtual thread per transfer when the JVM supports them (Java 21+),
+     * otherwise a fixed pool with one platform thread per allowed session
+     *
+     * @param maxSessions: most transfers allowed at once
+     * @return executor that runs transfer sessions, or builds their responses for the nio engine
+     */
+    private static ExecutorService newSessionExecutor(int maxSessions) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxSessions);
         }
     }
 
-    /** setNullPacket
-     * Creates null packet to send to client to signify end of transmission
+    /** sendReliably
+     * Sends the packets to the client through the sliding window ARQ, which returns them to the pool.
+     * The last packet carries the last segment flag, which tells the client the transfer is over.
      *
+     * @param serverSocket: session socket to send on and receive ACKs from
+     * @param segments: segments to deliver, produced as the window opens
      * @param IPAddress: IP Address of Client
      * @param portReceive: Port of Client
-     * @return returns Null Datagram Packet to send to Client
-     */
-    private static DatagramPacket setNullPacket(InetAddress IPAddress, int portReceive){
-        String nullByte = "\0";
-        ArrayList<Packet> nullPacket = Packet.Segmentation(nullByte.getBytes());    //null packet changed to full 256 bit size, but only contains 1 bit of info
-        DatagramPacket nullDatagram = nullPacket.get(0).getDatagramPacket(IPAddress, portReceive);
-        System.out.println("Sending Null Packet");
-        return nullDatagram;
+     * @param mode: Go-Back-N or Selective Repeat
+     * @param windowSize: maximum number of unacknowledged segments in flight
+     * @param congestionControl: decides how much of the window may be used
+     * @param fec: parity encoder, or null for none
+     */
+    private void sendReliably(DatagramSocket serverSocket, Iterator<Packet> segments, InetAddress IPAddress,
+                              int portReceive, ArqMode mode, int windowSize,
+                              CongestionControl congestionControl, FecEncoder fec) throws IOException {
+        SlidingWindowSender sender = new SlidingWindowSender(segments, mode, windowSize,
+                SlidingWindowSender.DEFAULT_RETRANSMIT_TIMEOUT_MS, congestionControl, fec, metrics);
+        System.out.println("Sending packets using " + mode + " with window " + windowSize
+                + " and " + congestionControl.getName() + " congestion control");
+        try {
+            sender.transfer(serverSocket, IPAddress, portReceive);
+            System.out.println("Transfer complete, " + sender.getSegmentsSent() + " packets, "
+                    + sender.getRetransmissions() + " retransmissions, " + describeSession(sender));
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Transfer abandoned: " + e.getMessage());
+        } finally {
+            sender.close(); //hands any packets still in flight back to the pool
+        }
+    }
+
+    /** describeSession
+     * @param sender: sender of a finished transfer
+     * @return bytes sent and throughput, measured round trip time and final congestion window, for the
+     * transfer summary
+     */
+    static String describeSession(SlidingWindowSender sender) {
+        long smoothedRtt = sender.getRttEstimator().getSmoothedRtt();
+        long elapsed = sender.getElapsedNanos();
+        return String.format("%d bytes in %.1f ms (%.2f MB/s), srtt %.2f ms, cwnd %d", sender.getBytesSent(),
+                elapsed / 1e6, elapsed <= 0 ? 0.0 : sender.getBytesSent() * 1e3 / elapsed,
+                smoothedRtt < 0 ? 0.0 : smoothedRtt / 1e6, sender.getCongestionControl().getWindow())
+                + (sender.getFecEncoder() != null ? ", " + sender.getFecEncoder() : "");
     }
 
 }